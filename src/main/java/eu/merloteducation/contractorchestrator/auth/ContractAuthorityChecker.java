@@ -17,16 +17,21 @@
 package eu.merloteducation.contractorchestrator.auth;
 
 import eu.merloteducation.authorizationlibrary.authorization.AuthorityChecker;
-import eu.merloteducation.contractorchestrator.models.entities.ContractTemplate;
+import eu.merloteducation.contractorchestrator.models.dto.ContractParties;
 import eu.merloteducation.contractorchestrator.repositories.ContractTemplateRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
+import java.util.Optional;
 import java.util.Set;
 
 @Component("contractAuthorityChecker")
 public class ContractAuthorityChecker {
+    private static final String CONTRACT_PARTIES_ATTRIBUTE_PREFIX = ContractAuthorityChecker.class.getName() + ".parties.";
+
     private final ContractTemplateRepository contractTemplateRepository;
     private final AuthorityChecker authorityChecker;
 
@@ -36,28 +41,29 @@ public class ContractAuthorityChecker {
         this.authorityChecker = authorityChecker;
     }
 
-    private boolean canAccessContract(Authentication authentication, ContractTemplate template) {
-        return this.isContractConsumer(authentication, template) || this.isContractProvider(authentication, template);
-    }
-
-    private boolean isContractProvider(Authentication authentication, ContractTemplate template) {
-        Set<String> representedOrgaIds = authorityChecker.getRepresentedOrgaIds(authentication);
-        if (template != null) {
-            String providerId = template.getProviderId();
-            return representedOrgaIds.contains(providerId);
+    /**
+     * Load the parties of the given contract. The result is memoized for the current request, so multiple checks
+     * on the same contract only query the database once.
+     *
+     * @param contractId id of the contract
+     * @return parties of the contract or null if it does not exist
+     */
+    private ContractParties loadContractParties(String contractId) {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes == null) {
+            return contractTemplateRepository.findPartiesById(contractId).orElse(null);
         }
-        return false;
-    }
 
-    private boolean isContractConsumer(Authentication authentication, ContractTemplate template) {
-        Set<String> representedOrgaIds = authorityChecker.getRepresentedOrgaIds(authentication);
-        if (template != null) {
-            String consumerId = template.getConsumerId();
-            return representedOrgaIds.contains(consumerId);
+        String attributeName = CONTRACT_PARTIES_ATTRIBUTE_PREFIX + contractId;
+        Object cachedParties = requestAttributes.getAttribute(attributeName, RequestAttributes.SCOPE_REQUEST);
+        if (cachedParties instanceof Optional<?> parties) {
+            return (ContractParties) parties.orElse(null);
         }
-        return false;
-    }
 
+        Optional<ContractParties> parties = contractTemplateRepository.findPartiesById(contractId);
+        requestAttributes.setAttribute(attributeName, parties, RequestAttributes.SCOPE_REQUEST);
+        return parties.orElse(null);
+    }
 
     /**
      * Given the current authentication and a contract id, check whether the requesting party either
@@ -68,12 +74,19 @@ public class ContractAuthorityChecker {
      * @return can access the requested contract
      */
     public boolean canAccessContract(Authentication authentication, String contractId) {
-        ContractTemplate template = contractTemplateRepository.findById(contractId).orElse(null);
-        return this.canAccessContract(authentication, template);
+        ContractParties parties = loadContractParties(contractId);
+        if (parties == null) {
+            return false;
+        }
+        Set<String> representedOrgaIds = authorityChecker.getRepresentedOrgaIds(authentication);
+        return representedOrgaIds.contains(parties.consumerId()) || representedOrgaIds.contains(parties.providerId());
     }
 
     public boolean isContractProvider(Authentication authentication, String contractId) {
-        ContractTemplate template = contractTemplateRepository.findById(contractId).orElse(null);
-        return this.isContractProvider(authentication, template);
+        ContractParties parties = loadContractParties(contractId);
+        if (parties == null) {
+            return false;
+        }
+        return authorityChecker.getRepresentedOrgaIds(authentication).contains(parties.providerId());
     }
 }
@@ -16,18 +16,18 @@
 
 package eu.merloteducation.contractorchestrator.config;
 
-import eu.merloteducation.contractorchestrator.service.EdcClient;
 import eu.merloteducation.contractorchestrator.service.OrganizationOrchestratorClient;
 import eu.merloteducation.contractorchestrator.service.PdfServiceClient;
 import eu.merloteducation.contractorchestrator.service.ServiceOfferingOrchestratorClient;
-import eu.merloteducation.modelslib.api.organization.OrganizationConnectorTransferDto;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.context.annotation.Scope;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.support.WebClientAdapter;
 import org.springframework.web.service.invoker.HttpServiceProxyFactory;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 @Configuration
 public class AppConfig {
@@ -41,6 +41,12 @@ public class AppConfig {
     @Value("${pdf-service.base-uri}")
     private String pdfServiceBaseUri;
 
+    @Value("${edc-client.max-connections:50}")
+    private int edcMaxConnections;
+
+    @Value("${edc-client.max-idle-time:30s}")
+    private Duration edcMaxIdleTime;
+
     @Bean
     public ServiceOfferingOrchestratorClient serviceOfferingOrchestratorClient() {
         WebClient webClient = WebClient.builder()
@@ -65,18 +71,20 @@ public class AppConfig {
         return httpServiceProxyFactory.createClient(OrganizationOrchestratorClient.class);
     }
 
-    @Bean
-    @Scope(value = "prototype")
-    public EdcClient edcClient(OrganizationConnectorTransferDto connector) {
-        WebClient webClient = WebClient.builder()
-                .baseUrl(connector.getManagementBaseUrl())
-                .defaultHeader("X-API-Key", connector.getConnectorAccessToken())
-                .build();
-        HttpServiceProxyFactory httpServiceProxyFactory = HttpServiceProxyFactory
-                .builder()
-                .exchangeAdapter(WebClientAdapter.create(webClient))
+    /**
+     * Connection pool shared by all EDC clients. Pools are kept per remote address, idle connections are closed
+     * in the background and pool metrics are published per connector address.
+     *
+     * @return edc connection provider
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider edcConnectionProvider() {
+        return ConnectionProvider.builder("edc")
+                .maxConnections(edcMaxConnections)
+                .maxIdleTime(edcMaxIdleTime)
+                .evictInBackground(edcMaxIdleTime)
+                .metrics(true)
                 .build();
-        return httpServiceProxyFactory.createClient(EdcClient.class);
     }
 
     @Bean
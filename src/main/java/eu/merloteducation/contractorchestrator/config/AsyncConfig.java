@@ -0,0 +1,93 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.contractorchestrator.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class AsyncConfig {
+
+    @Value("${enrichment.executor.core-pool-size:8}")
+    private int enrichmentCorePoolSize;
+
+    @Value("${enrichment.executor.max-pool-size:32}")
+    private int enrichmentMaxPoolSize;
+
+    @Value("${enrichment.executor.queue-capacity:256}")
+    private int enrichmentQueueCapacity;
+
+    @Value("${contract-pdf.workers:4}")
+    private int contractPdfWorkers;
+
+    /**
+     * Executor used to resolve the remote details (organizations, offerings) of contracts concurrently.
+     * If the pool is saturated, the lookup is run on the calling thread instead of being rejected.
+     *
+     * @return enrichment executor
+     */
+    @Bean
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public ThreadPoolTaskExecutor enrichmentExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(enrichmentCorePoolSize);
+        executor.setMaxPoolSize(enrichmentMaxPoolSize);
+        executor.setQueueCapacity(enrichmentQueueCapacity);
+        executor.setThreadNamePrefix("enrichment-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+
+    /**
+     * Executor used to resolve the remote details of contracts when virtual threads are enabled
+     * (spring.threads.virtual.enabled on Java 21+). Every lookup gets its own virtual thread, the number of
+     * concurrent lookups is still bounded by the configured maximum pool size.
+     *
+     * @return enrichment executor
+     */
+    @Bean("enrichmentExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public SimpleAsyncTaskExecutor virtualThreadEnrichmentExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("enrichment-");
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(enrichmentMaxPoolSize);
+        return executor;
+    }
+
+    /**
+     * Executor generating the contract pdfs in the background. The ContractPdfService never hands it more jobs than
+     * it has workers, the queue only holds jobs handed over while a worker is about to become idle.
+     *
+     * @return contract pdf executor
+     */
+    @Bean
+    public ThreadPoolTaskExecutor contractPdfExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(contractPdfWorkers);
+        executor.setMaxPoolSize(contractPdfWorkers);
+        executor.setQueueCapacity(contractPdfWorkers);
+        executor.setThreadNamePrefix("contract-pdf-");
+        return executor;
+    }
+}
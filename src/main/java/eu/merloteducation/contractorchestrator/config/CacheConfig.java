@@ -0,0 +1,109 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.contractorchestrator.config;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import eu.merloteducation.contractorchestrator.service.EdcClient;
+import eu.merloteducation.contractorchestrator.service.EdcClientRegistry;
+import eu.merloteducation.modelslib.api.organization.MerlotParticipantDto;
+import eu.merloteducation.modelslib.api.serviceoffering.ServiceOfferingDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class CacheConfig {
+
+    public static final String ORGANIZATION_DETAILS_CACHE = "organizationDetails";
+    public static final String OFFERING_DETAILS_CACHE = "offeringDetails";
+    public static final String EDC_CLIENT_CACHE = "edcClients";
+
+    @Value("${cache.organization-details.maximum-size:500}")
+    private long organizationDetailsMaximumSize;
+
+    @Value("${cache.organization-details.expire-after-write:5m}")
+    private Duration organizationDetailsExpireAfterWrite;
+
+    @Value("${cache.offering-details.maximum-size:1000}")
+    private long offeringDetailsMaximumSize;
+
+    @Value("${cache.offering-details.expire-after-write:5m}")
+    private Duration offeringDetailsExpireAfterWrite;
+
+    @Value("${cache.edc-clients.maximum-size:200}")
+    private long edcClientsMaximumSize;
+
+    @Value("${cache.edc-clients.expire-after-access:30m}")
+    private Duration edcClientsExpireAfterAccess;
+
+    /**
+     * Cache for organization details keyed by organization id. Entries are evicted after a fixed time
+     * or once an organization is revoked.
+     *
+     * @param meterRegistry registry to publish hit/miss/eviction metrics to
+     * @return organization details cache
+     */
+    @Bean
+    public Cache<String, MerlotParticipantDto> organizationDetailsCache(MeterRegistry meterRegistry) {
+        Cache<String, MerlotParticipantDto> cache = Caffeine.newBuilder()
+                .maximumSize(organizationDetailsMaximumSize)
+                .expireAfterWrite(organizationDetailsExpireAfterWrite)
+                .recordStats()
+                .build();
+        return CaffeineCacheMetrics.monitor(meterRegistry, cache, ORGANIZATION_DETAILS_CACHE);
+    }
+
+    /**
+     * Cache for service offering details keyed by offering id. Entries are evicted after a fixed time
+     * or once a contract for the offering is created or purged. The cache holds the pending replies as well,
+     * so concurrent requests for the same offering share a single request on the bus.
+     *
+     * @param meterRegistry registry to publish hit/miss/eviction metrics to
+     * @return offering details cache
+     */
+    @Bean
+    public AsyncCache<String, ServiceOfferingDto> offeringDetailsCache(MeterRegistry meterRegistry) {
+        AsyncCache<String, ServiceOfferingDto> cache = Caffeine.newBuilder()
+                .maximumSize(offeringDetailsMaximumSize)
+                .expireAfterWrite(offeringDetailsExpireAfterWrite)
+                .recordStats()
+                .buildAsync();
+        return CaffeineCacheMetrics.monitor(meterRegistry, cache, OFFERING_DETAILS_CACHE);
+    }
+
+    /**
+     * Cache for EDC clients keyed by connector settings. Clients that have not been used for a while are evicted.
+     *
+     * @param meterRegistry registry to publish hit/miss/eviction metrics to
+     * @return edc client cache
+     */
+    @Bean
+    public Cache<EdcClientRegistry.ConnectorKey, EdcClient> edcClientCache(MeterRegistry meterRegistry) {
+        Cache<EdcClientRegistry.ConnectorKey, EdcClient> cache = Caffeine.newBuilder()
+                .maximumSize(edcClientsMaximumSize)
+                .expireAfterAccess(edcClientsExpireAfterAccess)
+                .recordStats()
+                .build();
+        return CaffeineCacheMetrics.monitor(meterRegistry, cache, EDC_CLIENT_CACHE);
+    }
+}
@@ -16,14 +16,22 @@
 
 package eu.merloteducation.contractorchestrator.config;
 
+import eu.merloteducation.contractorchestrator.messaging.NegotiatingMessageConverter;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.AsyncRabbitTemplate;
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.rabbit.retry.RejectAndDontRequeueRecoverer;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Configuration
 public class MessageQueueConfig {
 
@@ -34,7 +42,41 @@ public class MessageQueueConfig {
     public static final String ORGANIZATION_REQUEST_KEY = "request.organization";
     public static final String OFFERING_REQUEST_KEY = "request.offering";
     public static final String ORGANIZATIONCONNECTOR_REQUEST_KEY = "request.organizationconnector";
-    public static final String ORGANIZATION_REVOKED_QUEUE = "contract.revoke.organization.queue";
+    public static final String ORGANIZATION_REVOKED_QUEUE = "contract.revoke.organization.durable.queue";
+    public static final String ORGANIZATION_REVOKED_DLQ = "contract.revoke.organization.dlq";
+    public static final String LEGACY_ORGANIZATION_REVOKED_QUEUE = "contract.revoke.organization.queue";
+    public static final String ORGANIZATION_REVOKED_CONTAINER_FACTORY = "organizationRevokedContainerFactory";
+
+    @Value("${messagequeue.async-replies.auto-startup:true}")
+    private boolean asyncRepliesAutoStartup;
+
+    @Value("${messagequeue.codec.content-type:application/json}")
+    private String codecContentType;
+
+    @Value("${messagequeue.codec.compression-threshold:0}")
+    private int codecCompressionThreshold;
+
+    @Value("${messagequeue.revocation.concurrency:1}")
+    private int revocationConcurrency;
+
+    @Value("${messagequeue.revocation.max-concurrency:4}")
+    private int revocationMaxConcurrency;
+
+    @Value("${messagequeue.revocation.prefetch:10}")
+    private int revocationPrefetch;
+
+    @Value("${messagequeue.revocation.retry.max-attempts:5}")
+    private int revocationRetryMaxAttempts;
+
+    @Value("${messagequeue.revocation.retry.initial-interval:1s}")
+    private Duration revocationRetryInitialInterval;
+
+    @Value("${messagequeue.revocation.retry.multiplier:2.0}")
+    private double revocationRetryMultiplier;
+
+    @Value("${messagequeue.revocation.retry.max-interval:30s}")
+    private Duration revocationRetryMaxInterval;
+
     @Bean
     DirectExchange orchestratorExchange() {
         return new DirectExchange(ORCHESTRATOR_EXCHANGE);
@@ -45,14 +87,62 @@ public class MessageQueueConfig {
         return BindingBuilder.bind(organizationRevokedQueue).to(orchestratorExchange).with(ORGANIZATION_REVOKED_KEY);
     }
 
+    /**
+     * Durable queue for revoked organizations. Messages that could not be processed after all retries are
+     * dead-lettered to the organization revoked DLQ via the default exchange.
+     *
+     * @return organization revoked queue
+     */
     @Bean
     public Queue organizationRevokedQueue() {
-        return new Queue(ORGANIZATION_REVOKED_QUEUE, false);
+        return QueueBuilder.durable(ORGANIZATION_REVOKED_QUEUE)
+                .deadLetterExchange("")
+                .deadLetterRoutingKey(ORGANIZATION_REVOKED_DLQ)
+                .build();
+    }
+
+    @Bean
+    public Queue organizationRevokedDeadLetterQueue() {
+        return QueueBuilder.durable(ORGANIZATION_REVOKED_DLQ).build();
+    }
+
+    /**
+     * Listener container factory for the organization revoked queue. Consumers are scaled between the configured
+     * concurrency bounds, failed deliveries are retried with exponential backoff and rejected to the DLQ once the
+     * attempts are exhausted.
+     *
+     * @param configurer configurer applying the spring.rabbitmq.listener.simple properties
+     * @param connectionFactory rabbit connection factory
+     * @return listener container factory
+     */
+    @Bean(ORGANIZATION_REVOKED_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory organizationRevokedContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setConcurrentConsumers(revocationConcurrency);
+        factory.setMaxConcurrentConsumers(revocationMaxConcurrency);
+        factory.setPrefetchCount(revocationPrefetch);
+        factory.setDefaultRequeueRejected(false);
+        factory.setAdviceChain(RetryInterceptorBuilder.stateless()
+                .maxAttempts(revocationRetryMaxAttempts)
+                .backOffOptions(revocationRetryInitialInterval.toMillis(), revocationRetryMultiplier,
+                        revocationRetryMaxInterval.toMillis())
+                .recoverer(new RejectAndDontRequeueRecoverer())
+                .build());
+        return factory;
     }
 
+    /**
+     * Converter for all messages on the bus. Incoming messages are decoded as JSON or CBOR according to their
+     * content type, outgoing messages are encoded in the configured content type (JSON by default, so peers that
+     * only understand JSON keep working) and, if enabled, compressed above the configured size.
+     *
+     * @return message converter
+     */
     @Bean
     public MessageConverter converter(){
-        return new Jackson2JsonMessageConverter();
+        return new NegotiatingMessageConverter(codecContentType, codecCompressionThreshold);
     }
 
     @Bean
@@ -61,4 +151,20 @@ public class MessageQueueConfig {
         rabbitTemplate.setMessageConverter(converter());
         return rabbitTemplate;
     }
+
+    /**
+     * Template for non-blocking request/reply over the message bus. Replies are received via direct reply-to,
+     * so no thread is blocked while waiting for the reply.
+     *
+     * @param connectionFactory rabbit connection factory
+     * @return async rabbit template
+     */
+    @Bean
+    public AsyncRabbitTemplate asyncRabbitTemplate(ConnectionFactory connectionFactory) {
+        RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
+        rabbitTemplate.setMessageConverter(converter());
+        AsyncRabbitTemplate asyncRabbitTemplate = new AsyncRabbitTemplate(rabbitTemplate);
+        asyncRabbitTemplate.setAutoStartup(asyncRepliesAutoStartup);
+        return asyncRabbitTemplate;
+    }
 }
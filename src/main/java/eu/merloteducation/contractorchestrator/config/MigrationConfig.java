@@ -0,0 +1,42 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator.config;
+
+import eu.merloteducation.contractorchestrator.migration.AttachmentsMigration;
+import eu.merloteducation.contractorchestrator.migration.ContractVersionMigration;
+import eu.merloteducation.contractorchestrator.migration.SingleTableMigration;
+import eu.merloteducation.contractorchestrator.migration.TermsAndConditionsOrderMigration;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MigrationConfig {
+
+    /**
+     * Migrations that have to work on the previous schema run before the entity manager factory is created,
+     * i.e. before Hibernate updates the schema to the current mapping.
+     *
+     * @return post processor adding the migrations as dependencies of the entity manager factory
+     */
+    @Bean
+    public static EntityManagerFactoryDependsOnPostProcessor schemaMigrationsDependsOnPostProcessor() {
+        return new EntityManagerFactoryDependsOnPostProcessor(SingleTableMigration.class,
+                TermsAndConditionsOrderMigration.class, ContractVersionMigration.class, AttachmentsMigration.class);
+    }
+}
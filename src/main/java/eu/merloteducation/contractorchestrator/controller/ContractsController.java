@@ -18,6 +18,9 @@ package eu.merloteducation.contractorchestrator.controller;
 
 import com.fasterxml.jackson.annotation.JsonView;
 import eu.merloteducation.authorizationlibrary.authorization.OrganizationRoleGrantedAuthority;
+import eu.merloteducation.contractorchestrator.models.dto.ContractBasicDtoCursorPage;
+import eu.merloteducation.contractorchestrator.models.dto.ContractVersionDto;
+import eu.merloteducation.contractorchestrator.models.dto.VersionedContractDto;
 import eu.merloteducation.contractorchestrator.models.entities.*;
 import eu.merloteducation.contractorchestrator.service.ContractStorageService;
 import eu.merloteducation.modelslib.api.contract.ContractBasicDto;
@@ -27,6 +30,7 @@ import eu.merloteducation.modelslib.api.contract.views.ContractViews;
 import eu.merloteducation.s3library.service.StorageClientException;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -46,10 +50,17 @@ import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
 import java.security.Principal;
+import java.util.Arrays;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/")
 public class ContractsController {
+    private static final String PREFER = "Prefer";
+    private static final String PREFERENCE_APPLIED = "Preference-Applied";
+    private static final String RETURN_MINIMAL = "return=minimal";
+    private static final String CONTRACT_PDF_RETRY_AFTER = "5";
+
     private final ContractStorageService contractStorageService;
 
     public ContractsController(@Autowired ContractStorageService contractStorageService) {
@@ -78,16 +89,26 @@ public class ContractsController {
      * @param editedContract contract template with updated fields
      * @param authToken      active OAuth2 token of this user
      * @param activeRole active user role
+     * @param ifMatch    optional entity tag the contract must still match, the update fails with 412 otherwise
+     * @param prefer     optional preferences, with return=minimal only the new version and state are returned
      * @return updated contract template
      */
     @PutMapping("")
     @PreAuthorize("@contractAuthorityChecker.canAccessContract(authentication, #editedContract.details.id) " +
             "&& #activeRole.isRepresentative()")
-    public ContractDto updateContractTemplate(@Valid @RequestBody ContractDto editedContract,
+    public ResponseEntity<?> updateContractTemplate(@Valid @RequestBody ContractDto editedContract,
                                               @RequestHeader(name = "Authorization") String authToken,
                                               @RequestHeader(name = "Active-Role") 
-                                              OrganizationRoleGrantedAuthority activeRole) {
-        return contractStorageService.updateContractTemplate(editedContract, authToken, activeRole.getOrganizationId());
+                                              OrganizationRoleGrantedAuthority activeRole,
+                                              @RequestHeader(name = HttpHeaders.IF_MATCH, required = false)
+                                              String ifMatch,
+                                              @RequestHeader(name = PREFER, required = false) String prefer) {
+        if (prefersMinimalReturn(prefer)) {
+            return minimal(contractStorageService.updateContractTemplateMinimal(editedContract,
+                    activeRole.getOrganizationId(), ifMatch));
+        }
+        return withETag(contractStorageService.updateContractTemplate(editedContract, authToken,
+                activeRole.getOrganizationId(), ifMatch));
     }
 
     /**
@@ -113,20 +134,52 @@ public class ContractsController {
      * @param activeRole active user role
      * @param principal  user data
      * @param authToken  active OAuth2 token of this user
+     * @param ifMatch    optional entity tag the contract must still match, the transition fails with 412 otherwise
+     * @param prefer     optional preferences, with return=minimal only the new version and state are returned
      * @return updated contract template
      */
     @PatchMapping("/contract/status/{contractId}/{status}")
     @PreAuthorize("@contractAuthorityChecker.canAccessContract(authentication, #contractId) " +
             "&& #activeRole.isRepresentative()")
-    public ContractDto transitionContractTemplate(@PathVariable(value = "contractId") String contractId,
+    public ResponseEntity<?> transitionContractTemplate(@PathVariable(value = "contractId") String contractId,
                                                   @PathVariable(value = "status") ContractState status,
                                                   @RequestHeader(name = "Active-Role") OrganizationRoleGrantedAuthority activeRole,
                                                   @RequestHeader(name = "Authorization") String authToken,
+                                                  @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                  @RequestHeader(name = PREFER, required = false) String prefer,
                                                   Principal principal) {
         String userName = principal.getName();
 
-        return contractStorageService.transitionContractTemplateState(contractId, status,
-                activeRole.getOrganizationId(), userName, authToken);
+        if (prefersMinimalReturn(prefer)) {
+            return minimal(contractStorageService.transitionContractTemplateStateMinimal(contractId, status,
+                    activeRole.getOrganizationId(), userName, ifMatch));
+        }
+        return withETag(contractStorageService.transitionContractTemplateState(contractId, status,
+                activeRole.getOrganizationId(), userName, authToken, ifMatch));
+    }
+
+    private static boolean prefersMinimalReturn(String prefer) {
+        return prefer != null && Arrays.stream(prefer.split(","))
+                .map(String::trim)
+                .anyMatch(RETURN_MINIMAL::equalsIgnoreCase);
+    }
+
+    private static ResponseEntity<ContractVersionDto> minimal(ContractVersionDto contract) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().header(PREFERENCE_APPLIED, RETURN_MINIMAL);
+        // a purged contract has no version anymore
+        if (contract.getVersion() != null) {
+            response.eTag(ContractStorageService.toETag(contract.getVersion()));
+        }
+        return response.body(contract);
+    }
+
+    private static ResponseEntity<ContractDto> withETag(VersionedContractDto contract) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        // a purged contract has no version anymore
+        if (contract.getVersion() != null) {
+            response.eTag(ContractStorageService.toETag(contract.getVersion()));
+        }
+        return response.body(contract.getContract());
     }
 
 
@@ -221,22 +274,59 @@ public class ContractsController {
                 Sort.by("creationDate").descending()), status, authToken);
     }
 
+    /**
+     * GET endpoint for scrolling through all contracts that are associated with the specified organization id
+     * using a continuation token instead of page numbers.
+     *
+     * @param cursor    continuation token returned by the previous request, omitted for the first request
+     * @param size      maximum number of contracts to return
+     * @param status    optional status filter
+     * @param orgaId    organization id to query
+     * @param authToken active OAuth2 token of this user
+     * @return slice of contracts related to this organization and the token for the following slice
+     */
+    @GetMapping("organization/{orgaId}/scroll")
+    @JsonView(ContractViews.BasicView.class)
+    @PreAuthorize("@authorityChecker.representsOrganization(authentication, #orgaId)")
+    public ContractBasicDtoCursorPage scrollOrganizationContracts(@RequestParam(value = "cursor", required = false) String cursor,
+                                                                  @RequestParam(value = "size", defaultValue = "9") @Min(1) @Max(15) int size,
+                                                                  @RequestParam(value = "status", required = false) ContractState status,
+                                                                  @PathVariable(value = "orgaId") String orgaId,
+                                                                  @RequestHeader(name = "Authorization") String authToken) {
+        return contractStorageService.getOrganizationContracts(orgaId, size, cursor, status, authToken);
+    }
+
     /**
      * GET endpoint for requesting detailed information about a contract with the given id.
+     * The response carries the version of the returned contract as entity tag. If the client already has the
+     * current version, 304 is returned without resolving the details of the contract.
      *
-     * @param contractId id of the contract
-     * @param authToken  active OAuth2 token of this user
+     * @param contractId  id of the contract
+     * @param authToken   active OAuth2 token of this user
+     * @param ifNoneMatch optional entity tags of the versions the client already has
      * @return detailed view of this contract
      */
     @GetMapping("contract/{contractId}")
     @PreAuthorize("@contractAuthorityChecker.canAccessContract(authentication, #contractId)")
-    public ContractDto getContractDetails(@PathVariable(value = "contractId") String contractId,
-                                          @RequestHeader(name = "Authorization") String authToken) {
-        return contractStorageService.getContractDetails(contractId, authToken);
+    public ResponseEntity<ContractDto> getContractDetails(@PathVariable(value = "contractId") String contractId,
+                                                          @RequestHeader(name = "Authorization") String authToken,
+                                                          @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                          String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            Optional<String> currentETag = contractStorageService.findContractETag(contractId);
+            if (currentETag.isPresent() && Arrays.stream(ifNoneMatch.split(","))
+                    .map(tag -> tag.trim().replaceFirst("^W/", ""))
+                    .anyMatch(tag -> tag.equals("*") || tag.equals(currentETag.get()))) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(currentETag.get()).build();
+            }
+        }
+        // the entity tag is taken from the loaded contract, as it may have changed since the check above
+        return withETag(contractStorageService.getVersionedContractDetails(contractId, authToken));
     }
 
     /**
-     * Given a contract, provide the contract pdf as download
+     * Given a contract, provide the contract pdf as download. As the pdf is generated in the background after the
+     * release, 202 is returned until it is ready. If the generation has failed, it is queued again.
      *
      * @param contractId id of contract template to add an attachment to
      * @return contractPdf file
@@ -244,6 +334,14 @@ public class ContractsController {
     @GetMapping(value = "/contract/{contractId}/contractPdf")
     @PreAuthorize("@contractAuthorityChecker.canAccessContract(authentication, #contractId)")
     public ResponseEntity<Resource> getContractPdf(@PathVariable(value = "contractId") String contractId) {
+        Optional<ContractPdfStatus> pdfStatus = contractStorageService.getContractPdfStatus(contractId);
+        if (pdfStatus.isPresent() && pdfStatus.get() == ContractPdfStatus.FAILED) {
+            contractStorageService.retryFailedContractPdf(contractId);
+        }
+        if (pdfStatus.isPresent() && pdfStatus.get() != ContractPdfStatus.READY) {
+            return ResponseEntity.accepted().header(HttpHeaders.RETRY_AFTER, CONTRACT_PDF_RETRY_AFTER).build();
+        }
+
         byte[] contractPdf;
         try {
             contractPdf = contractStorageService.getContractPdf(contractId);
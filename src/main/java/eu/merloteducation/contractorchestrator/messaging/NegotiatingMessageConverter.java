@@ -0,0 +1,142 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator.messaging;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractJackson2MessageConverter;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.SmartMessageConverter;
+import org.springframework.lang.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Message converter that supports JSON and CBOR. Incoming messages are decoded according to their content type
+ * header, messages without or with an unknown content type are treated as JSON. Outgoing messages are encoded in
+ * the configured content type and advertise the supported content types in the accept-content-type header, so
+ * peers can choose the more compact CBOR encoding for their replies.
+ * <p>
+ * Outgoing messages above the compression threshold (if enabled) are compressed with gzip. As with the Spring AMQP gzip post
+ * processors, compression is marked by prefixing the content encoding with "gzip:".
+ */
+public class NegotiatingMessageConverter implements SmartMessageConverter {
+
+    public static final String ACCEPT_HEADER = "accept-content-type";
+
+    private static final String GZIP = "gzip";
+
+    private static final String GZIP_PREFIX = GZIP + ":";
+
+    private final AbstractJackson2MessageConverter defaultConverter = new Jackson2JsonMessageConverter();
+
+    private final Map<String, AbstractJackson2MessageConverter> converters = Map.of(
+            MessageProperties.CONTENT_TYPE_JSON, defaultConverter,
+            CborMessageConverter.CONTENT_TYPE, new CborMessageConverter());
+
+    private final AbstractJackson2MessageConverter outgoingConverter;
+
+    private final String outgoingContentType;
+
+    private final int compressionThreshold;
+
+    /**
+     * Create a new converter.
+     *
+     * @param outgoingContentType content type of outgoing messages, application/json or application/cbor
+     * @param compressionThreshold outgoing messages with a body larger than this number of bytes are compressed,
+     *                             0 disables compression
+     */
+    public NegotiatingMessageConverter(String outgoingContentType, int compressionThreshold) {
+        this.outgoingConverter = converters.get(outgoingContentType);
+        if (outgoingConverter == null) {
+            throw new IllegalArgumentException("Unsupported message content type " + outgoingContentType);
+        }
+        this.outgoingContentType = outgoingContentType;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) {
+        return toMessage(object, messageProperties, null);
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties, @Nullable Type genericType) {
+        Message message = outgoingConverter.toMessage(object, messageProperties, genericType);
+        message.getMessageProperties().setHeader(ACCEPT_HEADER,
+                outgoingContentType.equals(CborMessageConverter.CONTENT_TYPE)
+                        ? CborMessageConverter.CONTENT_TYPE + ", " + MessageProperties.CONTENT_TYPE_JSON
+                        : MessageProperties.CONTENT_TYPE_JSON + ", " + CborMessageConverter.CONTENT_TYPE);
+        if (compressionThreshold > 0 && message.getBody().length > compressionThreshold) {
+            return compress(message);
+        }
+        return message;
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        return fromMessage(message, null);
+    }
+
+    @Override
+    public Object fromMessage(Message message, @Nullable Object conversionHint) {
+        Message decompressed = decompress(message);
+        String contentType = decompressed.getMessageProperties().getContentType();
+        AbstractJackson2MessageConverter converter = contentType == null ? defaultConverter
+                : converters.getOrDefault(contentType.split(";")[0].trim().toLowerCase(Locale.ROOT),
+                defaultConverter);
+        return converter.fromMessage(decompressed, conversionHint);
+    }
+
+    private static Message compress(Message message) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(message.getBody());
+        } catch (IOException e) {
+            throw new MessageConversionException("Failed to compress message", e);
+        }
+        MessageProperties properties = message.getMessageProperties();
+        String encoding = properties.getContentEncoding();
+        properties.setContentEncoding(encoding == null ? GZIP : GZIP_PREFIX + encoding);
+        return new Message(compressed.toByteArray(), properties);
+    }
+
+    private static Message decompress(Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        String encoding = properties.getContentEncoding();
+        if (encoding == null || !(encoding.equals(GZIP) || encoding.startsWith(GZIP_PREFIX))) {
+            return message;
+        }
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(message.getBody()))) {
+            byte[] body = gzip.readAllBytes();
+            properties.setContentEncoding(encoding.equals(GZIP) ? null : encoding.substring(GZIP_PREFIX.length()));
+            return new Message(body, properties);
+        } catch (IOException e) {
+            throw new MessageConversionException("Failed to decompress message", e);
+        }
+    }
+}
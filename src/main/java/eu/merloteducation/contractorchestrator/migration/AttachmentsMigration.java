@@ -0,0 +1,116 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator.migration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Moves contract attachments from the legacy column, in which Hibernate stored them as a Java-serialized set,
+ * to the contract_template_attachments table and drops the legacy column afterwards. Runs before the schema update
+ * (see MigrationConfig), so the application never serves contracts whose attachments are not migrated yet. Each
+ * batch of contracts is moved in its own transaction and clears the legacy values it moved, so an interrupted
+ * migration continues with the remaining contracts. Does nothing if the legacy column does not exist (anymore).
+ */
+@Component
+@Slf4j
+public class AttachmentsMigration implements InitializingBean {
+
+    private static final String ATTACHMENTS_TABLE = "contract_template_attachments";
+
+    // only sets of strings were ever stored in the legacy column, anything else is rejected when deserializing
+    private static final ObjectInputFilter ATTACHMENTS_FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=2;maxrefs=64;java.util.HashSet;java.lang.String;!*");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    public AttachmentsMigration(@Autowired DataSource dataSource,
+                                @Value("${migration.attachments.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!SchemaInspector.columnExists(jdbcTemplate, "contract_template", "attachments")) {
+            return;
+        }
+
+        log.info("Migrating contract attachments from the legacy serialized column");
+        jdbcTemplate.execute("create table if not exists " + ATTACHMENTS_TABLE
+                + " (contract_template_id varchar(255) not null, attachment varchar(255) not null,"
+                + " primary key (contract_template_id, attachment))");
+        int migrated = 0;
+        int batch;
+        do {
+            batch = transactionTemplate.execute(status -> migrateBatch());
+            migrated += batch;
+        } while (batch > 0);
+        jdbcTemplate.execute("alter table contract_template drop column attachments");
+        log.info("Migrated attachments of {} contracts", migrated);
+    }
+
+    private int migrateBatch() {
+        List<Object[]> attachmentRows = new ArrayList<>();
+        List<Object[]> contractIds = new ArrayList<>(batchSize);
+        jdbcTemplate.query("select id, attachments from contract_template where attachments is not null "
+                + "order by id fetch first ? rows only", rs -> {
+            String contractId = rs.getString("id");
+            for (String attachment : deserialize(contractId, rs.getBytes("attachments"))) {
+                attachmentRows.add(new Object[]{contractId, attachment});
+            }
+            contractIds.add(new Object[]{contractId});
+        }, batchSize);
+        if (contractIds.isEmpty()) {
+            return 0;
+        }
+
+        jdbcTemplate.batchUpdate("insert into " + ATTACHMENTS_TABLE + " (contract_template_id, attachment) "
+                + "values (?, ?)", attachmentRows);
+        jdbcTemplate.batchUpdate("update contract_template set attachments = null where id = ?", contractIds);
+        return contractIds.size();
+    }
+
+    private Collection<String> deserialize(String contractId, byte[] serializedAttachments) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serializedAttachments))) {
+            in.setObjectInputFilter(ATTACHMENTS_FILTER);
+            Collection<?> attachments = (Collection<?>) in.readObject();
+            return attachments.stream().map(String.class::cast).toList();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            throw new IllegalStateException("Failed to migrate attachments of contract " + contractId, e);
+        }
+    }
+}
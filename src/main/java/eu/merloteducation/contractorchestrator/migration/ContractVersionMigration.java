@@ -0,0 +1,51 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator.migration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Adds the version column to contracts stored before they were versioned, starting them at version 0. Runs before
+ * the schema update (see MigrationConfig), as contracts without a version would be treated as new ones.
+ */
+@Component
+@Slf4j
+public class ContractVersionMigration implements InitializingBean {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ContractVersionMigration(@Autowired DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!SchemaInspector.tableExists(jdbcTemplate, "contract_template")
+                || SchemaInspector.columnExists(jdbcTemplate, "contract_template", "version")) {
+            return;
+        }
+        log.info("Adding version column to contracts");
+        jdbcTemplate.execute("alter table contract_template add column version bigint default 0 not null");
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator.migration;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.GetResponse;
+import eu.merloteducation.contractorchestrator.config.MessageQueueConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Replaces the legacy non-durable organization revoked queue by the durable one. The legacy queue is unbound from
+ * the exchange, its remaining messages are moved to the durable queue and it is deleted afterwards. A message is only
+ * acknowledged on the legacy queue once the broker has confirmed it on the durable queue, so no message is lost if
+ * the migration is interrupted. Does nothing if the legacy queue does not exist (anymore), if the broker is not
+ * reachable or a message is not confirmed the migration is retried on the next start.
+ */
+@Component
+@Slf4j
+public class LegacyRevocationQueueMigration implements ApplicationRunner {
+
+    private final AmqpAdmin amqpAdmin;
+    private final RabbitTemplate rabbitTemplate;
+    private final Duration confirmTimeout;
+    private final MessagePropertiesConverter messagePropertiesConverter = new DefaultMessagePropertiesConverter();
+
+    public LegacyRevocationQueueMigration(@Autowired AmqpAdmin amqpAdmin,
+                                          @Autowired RabbitTemplate rabbitTemplate,
+                                          @Value("${messagequeue.revocation.migration.confirm-timeout:5s}")
+                                          Duration confirmTimeout) {
+        this.amqpAdmin = amqpAdmin;
+        this.rabbitTemplate = rabbitTemplate;
+        this.confirmTimeout = confirmTimeout;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            if (amqpAdmin.getQueueProperties(MessageQueueConfig.LEGACY_ORGANIZATION_REVOKED_QUEUE) == null) {
+                return;
+            }
+            log.info("Replacing legacy organization revoked queue by durable queue");
+            amqpAdmin.removeBinding(new Binding(MessageQueueConfig.LEGACY_ORGANIZATION_REVOKED_QUEUE,
+                    Binding.DestinationType.QUEUE, MessageQueueConfig.ORCHESTRATOR_EXCHANGE,
+                    MessageQueueConfig.ORGANIZATION_REVOKED_KEY, null));
+
+            Integer moved = rabbitTemplate.execute(this::moveMessages);
+            amqpAdmin.deleteQueue(MessageQueueConfig.LEGACY_ORGANIZATION_REVOKED_QUEUE);
+            log.info("Moved {} messages from the legacy organization revoked queue", moved);
+        } catch (AmqpException e) {
+            log.warn("Failed to replace legacy organization revoked queue, retrying on next start", e);
+        }
+    }
+
+    /**
+     * Move the messages of the legacy queue to the durable queue. Messages are fetched without auto-ack and only
+     * acknowledged once the durable queue has been confirmed, unacknowledged messages are requeued by the broker when
+     * the channel is closed.
+     *
+     * @param channel channel to fetch the legacy messages on
+     * @return number of moved messages
+     */
+    private int moveMessages(Channel channel) throws IOException {
+        int moved = 0;
+        GetResponse response;
+        while ((response = channel.basicGet(MessageQueueConfig.LEGACY_ORGANIZATION_REVOKED_QUEUE, false)) != null) {
+            Message message = new Message(response.getBody(), messagePropertiesConverter.toMessageProperties(
+                    response.getProps(), response.getEnvelope(), StandardCharsets.UTF_8.name()));
+            CorrelationData correlationData = new CorrelationData();
+            rabbitTemplate.send("", MessageQueueConfig.ORGANIZATION_REVOKED_QUEUE, message, correlationData);
+            awaitAck(correlationData);
+            channel.basicAck(response.getEnvelope().getDeliveryTag(), false);
+            moved++;
+        }
+        return moved;
+    }
+
+    private void awaitAck(CorrelationData correlationData) {
+        CorrelationData.Confirm confirm;
+        try {
+            confirm = correlationData.getFuture().get(confirmTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmqpException("Interrupted while waiting for the confirm of a moved message", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new AmqpException("Moved message was not confirmed", e);
+        }
+        if (!confirm.isAck()) {
+            throw new AmqpException("Moved message was rejected by the broker: " + confirm.getReason());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator.migration;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Lookups on the current database schema, used by the migrations to decide whether they have to run.
+ */
+final class SchemaInspector {
+
+    private SchemaInspector() {
+    }
+
+    static boolean tableExists(JdbcTemplate jdbcTemplate, String table) {
+        Integer tables = jdbcTemplate.queryForObject("select count(*) from information_schema.tables " +
+                "where lower(table_name) = ?", Integer.class, table);
+        return tables != null && tables > 0;
+    }
+
+    static boolean columnExists(JdbcTemplate jdbcTemplate, String table, String column) {
+        Integer columns = jdbcTemplate.queryForObject("select count(*) from information_schema.columns " +
+                "where lower(table_name) = ? and lower(column_name) = ?", Integer.class, table, column);
+        return columns != null && columns > 0;
+    }
+
+    /**
+     * Expression to order the rows of a table by their physical position, i.e. by insertion order for tables that
+     * are only ever inserted into and deleted from. Empty if the database has no such pseudo column.
+     */
+    static String physicalRowOrder(JdbcTemplate jdbcTemplate) {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        if ("PostgreSQL".equals(product)) {
+            return " order by ctid";
+        }
+        if ("H2".equals(product)) {
+            return " order by _rowid_";
+        }
+        return "";
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator.migration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Moves the data of the former joined inheritance tables of contracts, provisionings and transfer provisionings
+ * into the columns of their single tables, moves signatures into the contract table and drops the former tables.
+ * Runs before the schema update (see MigrationConfig), as the schema update would add the discriminator columns
+ * as not null. Each step does nothing if its former table does not exist (anymore).
+ */
+@Component
+@Slf4j
+public class SingleTableMigration implements InitializingBean {
+
+    private static final String VARCHAR = "varchar(255)";
+    private static final String DISCRIMINATOR = "varchar(31)";
+    private static final String TIMESTAMP = "timestamp(6) with time zone";
+    private static final String FOREIGN_KEY = "bigint";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public SingleTableMigration(@Autowired DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        transactionTemplate.executeWithoutResult(status -> {
+            migrateContractTemplates();
+            migrateSignatures();
+            migrateTransferProvisionings();
+            migrateProvisionings();
+        });
+    }
+
+    private void migrateContractTemplates() {
+        moveSubclass("contract_template", "saas_contract_template", null,
+                Map.of("user_count_selection", VARCHAR));
+        moveSubclass("contract_template", "data_delivery_contract_template", null,
+                Map.of("exchange_count_selection", VARCHAR));
+        moveSubclass("contract_template", "cooperation_contract_template", null, Map.of());
+    }
+
+    private void migrateSignatures() {
+        if (!SchemaInspector.tableExists(jdbcTemplate, "contract_signature")) {
+            return;
+        }
+        log.info("Moving contract signatures into the contract table");
+        for (String party : new String[]{"consumer", "provider"}) {
+            addColumn("contract_template", party + "_signer_name", VARCHAR);
+            addColumn("contract_template", party + "_signature_date", TIMESTAMP);
+            jdbcTemplate.update("update contract_template set " +
+                    party + "_signer_name = (select s.signer_name from contract_signature s " +
+                    "where s.id = contract_template." + party + "_signature_id), " +
+                    party + "_signature_date = (select s.signature_date from contract_signature s " +
+                    "where s.id = contract_template." + party + "_signature_id) " +
+                    "where " + party + "_signature_id is not null");
+        }
+        jdbcTemplate.execute("drop table contract_signature cascade");
+        jdbcTemplate.execute("alter table contract_template drop column consumer_signature_id");
+        jdbcTemplate.execute("alter table contract_template drop column provider_signature_id");
+    }
+
+    private void migrateTransferProvisionings() {
+        moveSubclass("transfer_provisioning", "ionos_s3_consumer_transfer_provisioning",
+                "IonosS3ConsumerTransferProvisioning",
+                Map.of("data_address_target_bucket_name", VARCHAR, "data_address_target_path", VARCHAR));
+        moveSubclass("transfer_provisioning", "ionos_s3_provider_transfer_provisioning",
+                "IonosS3ProviderTransferProvisioning",
+                Map.of("data_address_source_bucket_name", VARCHAR, "data_address_source_file_name", VARCHAR));
+    }
+
+    private void migrateProvisionings() {
+        moveSubclass("service_contract_provisioning", "data_delivery_provisioning", "DataDeliveryProvisioning",
+                Map.of("consumer_transfer_provisioning_id", FOREIGN_KEY,
+                        "provider_transfer_provisioning_id", FOREIGN_KEY));
+        moveSubclass("service_contract_provisioning", "default_provisioning", "DefaultProvisioning", Map.of());
+    }
+
+    /**
+     * Copy the columns of a former subclass table into the single table of the hierarchy and drop the subclass
+     * table afterwards.
+     *
+     * @param rootTable single table of the hierarchy
+     * @param subclassTable former subclass table
+     * @param discriminator discriminator value of the subclass, null if the root table already has one
+     * @param columns columns of the subclass table with their types
+     */
+    private void moveSubclass(String rootTable, String subclassTable, String discriminator,
+                              Map<String, String> columns) {
+        if (!SchemaInspector.tableExists(jdbcTemplate, subclassTable)) {
+            return;
+        }
+        log.info("Moving {} into {}", subclassTable, rootTable);
+
+        String subclassRows = " where id in (select id from " + subclassTable + ")";
+        if (discriminator != null) {
+            addColumn(rootTable, "discriminator", DISCRIMINATOR);
+            jdbcTemplate.update("update " + rootTable + " set discriminator = ?" + subclassRows, discriminator);
+        }
+        columns.forEach((column, type) -> {
+            addColumn(rootTable, column, type);
+            jdbcTemplate.update("update " + rootTable + " set " + column + " = (select s." + column + " from "
+                    + subclassTable + " s where s.id = " + rootTable + ".id)" + subclassRows);
+        });
+        jdbcTemplate.execute("drop table " + subclassTable + " cascade");
+    }
+
+    private void addColumn(String table, String column, String type) {
+        if (!SchemaInspector.columnExists(jdbcTemplate, table, column)) {
+            jdbcTemplate.execute("alter table " + table + " add column " + column + " " + type);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator.migration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adds the order column to terms and conditions that were stored before the collection was ordered and assigns
+ * it, rewriting the rows of each affected contract once in their stored order. Runs before the schema update
+ * (see MigrationConfig), as the schema update would add the order column as not null. Does nothing if all rows
+ * are ordered already.
+ */
+@Component
+@Slf4j
+public class TermsAndConditionsOrderMigration implements InitializingBean {
+
+    private static final String TNC_TABLE = "contract_template_terms_and_conditions";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private String rowOrder;
+
+    public TermsAndConditionsOrderMigration(@Autowired DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!SchemaInspector.tableExists(jdbcTemplate, TNC_TABLE)) {
+            return;
+        }
+        if (!SchemaInspector.columnExists(jdbcTemplate, TNC_TABLE, "tnc_order")) {
+            jdbcTemplate.execute("alter table " + TNC_TABLE + " add column tnc_order integer");
+        }
+
+        List<String> contractIds = jdbcTemplate.queryForList("select distinct contract_template_id from "
+                + TNC_TABLE + " where tnc_order is null", String.class);
+        if (contractIds.isEmpty()) {
+            return;
+        }
+
+        rowOrder = SchemaInspector.physicalRowOrder(jdbcTemplate);
+        log.info("Assigning terms and conditions order for {} contracts", contractIds.size());
+        contractIds.forEach(contractId -> transactionTemplate.executeWithoutResult(status -> orderRows(contractId)));
+    }
+
+    private void orderRows(String contractId) {
+        // the unordered rows carry no position, so the order they were stored in becomes the permanent order; the
+        // rows are only ever inserted and deleted as a whole per contract, hence their physical order is the
+        // insertion order
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("select content, hash from " + TNC_TABLE
+                + " where contract_template_id = ?" + rowOrder, contractId);
+        jdbcTemplate.update("delete from " + TNC_TABLE + " where contract_template_id = ?", contractId);
+
+        List<Object[]> orderedRows = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            orderedRows.add(new Object[]{contractId, rows.get(i).get("content"), rows.get(i).get("hash"), i});
+        }
+        jdbcTemplate.batchUpdate("insert into " + TNC_TABLE
+                + " (contract_template_id, content, hash, tnc_order) values (?, ?, ?, ?)", orderedRows);
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.contractorchestrator.models.dto;
+
+/**
+ * Parties of a contract, used to check access to a contract without loading it entirely.
+ *
+ * @param providerId id of the providing organization
+ * @param consumerId id of the consuming organization
+ */
+public record ContractParties(String providerId, String consumerId) {
+}
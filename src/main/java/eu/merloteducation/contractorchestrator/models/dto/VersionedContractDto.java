@@ -0,0 +1,34 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.contractorchestrator.models.dto;
+
+import eu.merloteducation.modelslib.api.contract.ContractDto;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Detailed representation of a contract after a write, together with the version it was stored with.
+ */
+@Getter
+@AllArgsConstructor
+public class VersionedContractDto {
+
+    private ContractDto contract;
+
+    // null if the contract does not exist anymore
+    private Long version;
+}
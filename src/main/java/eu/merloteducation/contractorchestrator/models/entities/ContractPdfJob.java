@@ -0,0 +1,50 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator.models.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Pending generation of the pdf of a released contract. Stored in the same transaction as the release and
+ * processed by the ContractPdfService.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class ContractPdfJob {
+    @Id
+    private String contractId;
+
+    private int attempts;
+
+    @Column(nullable = false)
+    private OffsetDateTime nextAttemptAt;
+
+    public ContractPdfJob(String contractId) {
+        this.contractId = contractId;
+        this.nextAttemptAt = OffsetDateTime.now();
+    }
+}
@@ -17,23 +17,15 @@
 package eu.merloteducation.contractorchestrator.models.entities;
 
 import jakarta.persistence.*;
-import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
-import lombok.Setter;
 
 import java.time.OffsetDateTime;
 
-@Entity
-@Inheritance(strategy = InheritanceType.JOINED)
+@Embeddable
 @NoArgsConstructor
 @Getter
 public class ContractSignature {
-    @Id
-    @Setter(AccessLevel.NONE)
-    @GeneratedValue
-    private Long id;
-
     private String signerName;
     private OffsetDateTime signatureDate;
 
@@ -22,6 +22,7 @@ import jakarta.validation.constraints.Size;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.time.OffsetDateTime;
 import java.util.*;
@@ -30,9 +31,26 @@ import java.util.*;
 @Getter
 @Setter
 @Entity
-@Inheritance(strategy = InheritanceType.JOINED)
+@Table(indexes = {
+        @Index(name = "idx_contract_template_provider_created", columnList = "provider_id, creation_date, id"),
+        @Index(name = "idx_contract_template_consumer_created", columnList = "consumer_id, creation_date, id"),
+        @Index(name = "idx_contract_template_provider_state_created", columnList = "provider_id, state, creation_date, id"),
+        @Index(name = "idx_contract_template_consumer_state_created", columnList = "consumer_id, state, creation_date, id")
+})
+@DynamicUpdate
+@Inheritance(strategy = InheritanceType.SINGLE_TABLE)
+// list views only need the scalar columns, so nothing is fetched with them; the detail view needs the whole aggregate
+@NamedEntityGraph(name = ContractTemplate.LIST_GRAPH)
+@NamedEntityGraph(name = ContractTemplate.DETAIL_GRAPH, attributeNodes = {
+        @NamedAttributeNode("serviceContractProvisioning"),
+        @NamedAttributeNode("termsAndConditions"),
+        @NamedAttributeNode("attachments")
+})
 @DiscriminatorColumn(name = "discriminator")
 public abstract class ContractTemplate {
+    public static final String LIST_GRAPH = "ContractTemplate.list";
+    public static final String DETAIL_GRAPH = "ContractTemplate.detail";
+
     @Id
     @Setter(AccessLevel.NONE)
     private String id;
@@ -48,6 +66,11 @@ public abstract class ContractTemplate {
     @Setter(AccessLevel.NONE)
     private OffsetDateTime creationDate;
 
+    // null until the contract is stored for the first time
+    @Version
+    @Setter(AccessLevel.NONE)
+    private Long version;
+
     private String offeringId;
 
     private String providerId;
@@ -62,26 +85,41 @@ public abstract class ContractTemplate {
 
     private boolean consumerAttachmentsAccepted;
 
+    // ordered, so changes only touch the affected rows instead of rewriting the whole collection
     @ElementCollection
+    @CollectionTable(name = "contract_template_terms_and_conditions",
+            joinColumns = @JoinColumn(name = "contract_template_id"))
+    @OrderColumn(name = "tnc_order")
     private List<ContractTnc> termsAndConditions;
 
     private String additionalAgreements;
 
     @Size(max=10)
+    @ElementCollection
+    @CollectionTable(name = "contract_template_attachments",
+            joinColumns = @JoinColumn(name = "contract_template_id"),
+            indexes = @Index(name = "idx_contract_template_attachments_attachment", columnList = "attachment"))
+    @Column(name = "attachment")
     private Set<String> attachments;
 
     @OneToOne(cascade = CascadeType.ALL)
     @JoinColumn(name = "provisioning_id")
     private ServiceContractProvisioning serviceContractProvisioning;
 
-    @OneToOne(cascade = CascadeType.ALL)
-    @JoinColumn(name = "consumer_signature_id")
+    @Embedded
+    @AttributeOverride(name = "signerName", column = @Column(name = "consumer_signer_name"))
+    @AttributeOverride(name = "signatureDate", column = @Column(name = "consumer_signature_date"))
     private ContractSignature consumerSignature;
 
-    @OneToOne(cascade = CascadeType.ALL)
-    @JoinColumn(name = "provider_signature_id")
+    @Embedded
+    @AttributeOverride(name = "signerName", column = @Column(name = "provider_signer_name"))
+    @AttributeOverride(name = "signatureDate", column = @Column(name = "provider_signature_date"))
     private ContractSignature providerSignature;
 
+    // null for contracts released before the pdf was generated in the background
+    @Enumerated(EnumType.STRING)
+    private ContractPdfStatus pdfStatus;
+
     protected ContractTemplate() {
         this.state = ContractState.IN_DRAFT;
         this.id = "Contract:" + UUID.randomUUID();
@@ -94,6 +132,7 @@ public abstract class ContractTemplate {
     protected ContractTemplate(ContractTemplate template, boolean regenerate) {
         this.state = regenerate ? ContractState.IN_DRAFT : template.getState();
         this.id = regenerate ? "Contract:" + UUID.randomUUID() : template.getId();
+        this.version = regenerate ? null : template.getVersion();
         this.creationDate = OffsetDateTime.now();
         this.offeringId = template.getOfferingId();
         this.providerId = template.getProviderId();
@@ -107,6 +146,7 @@ public abstract class ContractTemplate {
         this.attachments = new HashSet<>(template.getAttachments());
         this.providerSignature = regenerate ? null : template.getProviderSignature();
         this.consumerSignature = regenerate ? null : template.getConsumerSignature();
+        this.pdfStatus = regenerate ? null : template.getPdfStatus();
         this.serviceContractProvisioning = template.getServiceContractProvisioning().makeCopy();
     }
 
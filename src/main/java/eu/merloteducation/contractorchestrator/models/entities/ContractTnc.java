@@ -18,6 +18,7 @@ package eu.merloteducation.contractorchestrator.models.entities;
 
 import eu.merloteducation.gxfscataloglibrary.models.selfdescriptions.gx.datatypes.GxSOTermsAndConditions;
 import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -26,6 +27,7 @@ import lombok.Setter;
 @Setter
 @Embeddable
 @NoArgsConstructor
+@EqualsAndHashCode
 public class ContractTnc {
     private String content;
     private String hash;
@@ -17,8 +17,10 @@
 package eu.merloteducation.contractorchestrator.models.entities;
 
 import jakarta.persistence.Entity;
+import org.hibernate.annotations.DynamicUpdate;
 
 @Entity
+@DynamicUpdate
 public class DefaultProvisioning extends ServiceContractProvisioning {
     public DefaultProvisioning() {
         super();
@@ -0,0 +1,62 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator.models.entities;
+
+import eu.merloteducation.modelslib.queue.ContractTemplateUpdated;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Contract event that has been stored in the same transaction as the change to the contract and waits to be
+ * published on the message bus by the outbox relay. Messages are relayed in the order they were created in, the
+ * id only breaks ties, as ids are allocated in blocks per instance and do not follow the creation order.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_outbox_message_created", columnList = "created_at, id"))
+@Getter
+@NoArgsConstructor
+public class OutboxMessage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @Column(nullable = false)
+    private String routingKey;
+
+    @Column(nullable = false)
+    private String contractId;
+
+    private String serviceOfferingId;
+
+    @Column(nullable = false)
+    private OffsetDateTime createdAt;
+
+    public OutboxMessage(String routingKey, ContractTemplateUpdated contractTemplateUpdated) {
+        this.routingKey = routingKey;
+        this.contractId = contractTemplateUpdated.getContractId();
+        this.serviceOfferingId = contractTemplateUpdated.getServiceOfferingId();
+        this.createdAt = OffsetDateTime.now();
+    }
+
+    public ContractTemplateUpdated toContractTemplateUpdated() {
+        return new ContractTemplateUpdated(contractId, serviceOfferingId);
+    }
+}
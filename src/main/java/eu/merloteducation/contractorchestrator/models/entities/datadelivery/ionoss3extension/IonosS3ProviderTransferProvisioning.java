@@ -22,11 +22,13 @@ import io.netty.util.internal.StringUtil;
 import jakarta.persistence.Entity;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.DynamicUpdate;
 
 
 @Getter
 @Setter
 @Entity
+@DynamicUpdate
 public class IonosS3ProviderTransferProvisioning extends TransferProvisioning {
 
     private String dataAddressSourceBucketName;
@@ -16,23 +16,132 @@
 
 package eu.merloteducation.contractorchestrator.repositories;
 
+import eu.merloteducation.contractorchestrator.models.dto.ContractParties;
+import eu.merloteducation.contractorchestrator.models.entities.ContractPdfStatus;
 import eu.merloteducation.contractorchestrator.models.entities.ContractState;
 import eu.merloteducation.contractorchestrator.models.entities.ContractTemplate;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface ContractTemplateRepository extends JpaRepository<ContractTemplate, String> {
 
-    @Query("select c from ContractTemplate c where c.providerId = :orgaId or c.consumerId = :orgaId")
+    // load graph, so associations outside the graph (e.g. the transfer provisionings) keep their mapped fetch type
+    @Override
+    @EntityGraph(value = ContractTemplate.DETAIL_GRAPH, type = EntityGraph.EntityGraphType.LOAD)
+    Optional<ContractTemplate> findById(String id);
+
+    @Query("select new eu.merloteducation.contractorchestrator.models.dto.ContractParties(c.providerId, c.consumerId) " +
+            "from ContractTemplate c where c.id = :id")
+    Optional<ContractParties> findPartiesById(String id);
+
+    @Query("select c.version from ContractTemplate c where c.id = :id")
+    Optional<Long> findVersionById(String id);
+
+    @Query("select c.pdfStatus from ContractTemplate c where c.id = :id")
+    Optional<ContractPdfStatus> findPdfStatusById(String id);
+
+    // the pdf is not part of the contract terms, so its status is updated without changing the contract version
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update ContractTemplate c set c.pdfStatus = :pdfStatus where c.id = :id")
+    int updatePdfStatusById(String id, ContractPdfStatus pdfStatus);
+
+    // the status condition makes the update a no-op if another request has changed the status in the meantime
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update ContractTemplate c set c.pdfStatus = :targetStatus where c.id = :id and c.pdfStatus = :sourceStatus")
+    int updatePdfStatusById(String id, ContractPdfStatus sourceStatus, ContractPdfStatus targetStatus);
+
+    // the participant conditions are resolved as a union of two lookups, so each one can use its own index
+    // instead of the database falling back to a scan for the or condition
+    String ORGA_CONTRACT_IDS = "select p.id from ContractTemplate p where p.providerId = :orgaId " +
+            "union select q.id from ContractTemplate q where q.consumerId = :orgaId";
+
+    String ORGA_CONTRACT_IDS_BY_STATE = "select p.id from ContractTemplate p where p.providerId = :orgaId and p.state = :state " +
+            "union select q.id from ContractTemplate q where q.consumerId = :orgaId and q.state = :state";
+
+    // keyset pagination, newest contracts first with the id as tiebreaker. The provider and the consumer side are
+    // queried separately, so each side only reads up to the limit along its index, and the two slices are merged
+    String PROVIDER_CONTRACTS = "select c from ContractTemplate c where c.providerId = :orgaId";
+
+    String CONSUMER_CONTRACTS = "select c from ContractTemplate c where c.consumerId = :orgaId";
+
+    String WITH_STATE = " and c.state = :state";
+
+    String AFTER_CURSOR = " and (c.creationDate < :creationDate or (c.creationDate = :creationDate and c.id < :id))";
+
+    String KEYSET_ORDER = " order by c.creationDate desc, c.id desc";
+
+    @EntityGraph(ContractTemplate.LIST_GRAPH)
+    @Query(value = "select c from ContractTemplate c where c.id in (" + ORGA_CONTRACT_IDS + ")",
+            countQuery = "select count(c) from ContractTemplate c where c.id in (" + ORGA_CONTRACT_IDS + ")")
     Page<ContractTemplate> findAllByOrgaId(String orgaId, Pageable pageable);
 
-    @Query("select c from ContractTemplate c where (c.providerId = :orgaId or c.consumerId = :orgaId) and c.state = :state")
+    @EntityGraph(ContractTemplate.LIST_GRAPH)
+    @Query(value = "select c from ContractTemplate c where c.id in (" + ORGA_CONTRACT_IDS_BY_STATE + ")",
+            countQuery = "select count(c) from ContractTemplate c where c.id in (" + ORGA_CONTRACT_IDS_BY_STATE + ")")
     Page<ContractTemplate> findAllByOrgaIdAndState(String orgaId, ContractState state, Pageable pageable);
 
-    @Query("select c from ContractTemplate c where (c.providerId = :orgaId or c.consumerId = :orgaId) and c.state = :state")
-    List<ContractTemplate> findAllByOrgaIdAndState(String orgaId, ContractState state);
+    // the ids are transitioned with a bulk update that bypasses ContractTemplate#transitionState, so for the
+    // transitions of the organization revocation the selection has to match the entity rules: DELETED only needs a
+    // provisioning, which every contract is created with, and none of the contract types restricts it any further
+    @Query("select c.id from ContractTemplate c where c.id in (" + ORGA_CONTRACT_IDS_BY_STATE + ")")
+    List<String> findIdsByOrgaIdAndState(String orgaId, ContractState state, Limit limit);
+
+    // as above for REVOKED, which saas and cooperation contracts refuse in their transitionAllowed, so only the data
+    // delivery contracts are selected. A new contract type must be added here if it allows the revocation
+    @Query("select c.id from DataDeliveryContractTemplate c where c.id in (" + ORGA_CONTRACT_IDS_BY_STATE + ")")
+    List<String> findDataDeliveryIdsByOrgaIdAndState(String orgaId, ContractState state, Limit limit);
+
+    // the state condition makes the update a no-op for contracts that have left the source state in the meantime
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update ContractTemplate c set c.state = :targetState, c.version = c.version + 1 " +
+            "where c.id in :ids and c.state = :sourceState")
+    int updateStateByIds(Collection<String> ids, ContractState sourceState, ContractState targetState);
+
+    @EntityGraph(ContractTemplate.LIST_GRAPH)
+    @Query(PROVIDER_CONTRACTS + KEYSET_ORDER)
+    List<ContractTemplate> findKeysetByProviderId(String orgaId, Limit limit);
+
+    @EntityGraph(ContractTemplate.LIST_GRAPH)
+    @Query(PROVIDER_CONTRACTS + AFTER_CURSOR + KEYSET_ORDER)
+    List<ContractTemplate> findKeysetByProviderIdAfter(String orgaId, OffsetDateTime creationDate, String id, Limit limit);
+
+    @EntityGraph(ContractTemplate.LIST_GRAPH)
+    @Query(CONSUMER_CONTRACTS + KEYSET_ORDER)
+    List<ContractTemplate> findKeysetByConsumerId(String orgaId, Limit limit);
+
+    @EntityGraph(ContractTemplate.LIST_GRAPH)
+    @Query(CONSUMER_CONTRACTS + AFTER_CURSOR + KEYSET_ORDER)
+    List<ContractTemplate> findKeysetByConsumerIdAfter(String orgaId, OffsetDateTime creationDate, String id, Limit limit);
+
+    @EntityGraph(ContractTemplate.LIST_GRAPH)
+    @Query(PROVIDER_CONTRACTS + WITH_STATE + KEYSET_ORDER)
+    List<ContractTemplate> findKeysetByProviderIdAndState(String orgaId, ContractState state, Limit limit);
+
+    @EntityGraph(ContractTemplate.LIST_GRAPH)
+    @Query(PROVIDER_CONTRACTS + WITH_STATE + AFTER_CURSOR + KEYSET_ORDER)
+    List<ContractTemplate> findKeysetByProviderIdAndStateAfter(String orgaId, ContractState state,
+                                                               OffsetDateTime creationDate, String id, Limit limit);
+
+    @EntityGraph(ContractTemplate.LIST_GRAPH)
+    @Query(CONSUMER_CONTRACTS + WITH_STATE + KEYSET_ORDER)
+    List<ContractTemplate> findKeysetByConsumerIdAndState(String orgaId, ContractState state, Limit limit);
+
+    @EntityGraph(ContractTemplate.LIST_GRAPH)
+    @Query(CONSUMER_CONTRACTS + WITH_STATE + AFTER_CURSOR + KEYSET_ORDER)
+    List<ContractTemplate> findKeysetByConsumerIdAndStateAfter(String orgaId, ContractState state,
+                                                               OffsetDateTime creationDate, String id, Limit limit);
 }
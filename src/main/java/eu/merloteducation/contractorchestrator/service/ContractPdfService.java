@@ -0,0 +1,163 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator.service;
+
+import eu.merloteducation.contractorchestrator.models.entities.ContractPdfJob;
+import eu.merloteducation.contractorchestrator.models.entities.ContractPdfStatus;
+import eu.merloteducation.contractorchestrator.repositories.ContractPdfJobRepository;
+import eu.merloteducation.contractorchestrator.repositories.ContractTemplateRepository;
+import eu.merloteducation.modelslib.api.contract.ContractPdfDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Generates the pdfs of released contracts from the persisted job queue. Due jobs are claimed by one instance,
+ * rendered on a bounded pool of workers and retried with exponential backoff if the generation fails.
+ */
+@Service
+@Slf4j
+public class ContractPdfService {
+    private final ContractPdfJobRepository contractPdfJobRepository;
+    private final ContractTemplateRepository contractTemplateRepository;
+    private final ContractStorageService contractStorageService;
+    private final PdfServiceClient pdfServiceClient;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor contractPdfExecutor;
+    private final Semaphore workers;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration claimTimeout;
+
+    public ContractPdfService(@Autowired ContractPdfJobRepository contractPdfJobRepository,
+                              @Autowired ContractTemplateRepository contractTemplateRepository,
+                              @Autowired ContractStorageService contractStorageService,
+                              @Autowired PdfServiceClient pdfServiceClient,
+                              @Autowired TransactionTemplate transactionTemplate,
+                              @Autowired @Qualifier("contractPdfExecutor") Executor contractPdfExecutor,
+                              @Value("${contract-pdf.workers:4}") int workers,
+                              @Value("${contract-pdf.retry.max-attempts:20}") int maxAttempts,
+                              @Value("${contract-pdf.retry.initial-interval:10s}") Duration initialBackoff,
+                              @Value("${contract-pdf.retry.max-interval:10m}") Duration maxBackoff,
+                              @Value("${contract-pdf.claim-timeout:5m}") Duration claimTimeout) {
+        this.contractPdfJobRepository = contractPdfJobRepository;
+        this.contractTemplateRepository = contractTemplateRepository;
+        this.contractStorageService = contractStorageService;
+        this.pdfServiceClient = pdfServiceClient;
+        this.transactionTemplate = transactionTemplate;
+        this.contractPdfExecutor = contractPdfExecutor;
+        this.workers = new Semaphore(workers);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.claimTimeout = claimTimeout;
+    }
+
+    /**
+     * Claim as many due jobs as there are idle workers and hand them to the workers.
+     */
+    @Scheduled(fixedDelayString = "${contract-pdf.poll-interval:PT2S}")
+    public void processDueJobs() {
+        int idleWorkers = workers.availablePermits();
+        if (idleWorkers == 0) {
+            return;
+        }
+
+        List<String> contractIds = transactionTemplate.execute(status -> claimDueJobs(idleWorkers));
+        if (contractIds == null) {
+            return;
+        }
+        for (String contractId : contractIds) {
+            workers.acquireUninterruptibly();
+            try {
+                contractPdfExecutor.execute(() -> {
+                    try {
+                        generateContractPdf(contractId);
+                    } finally {
+                        workers.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the job is picked up again once its claim has timed out
+                workers.release();
+                log.warn("Failed to schedule pdf generation of contract {}", contractId, e);
+            }
+        }
+    }
+
+    private List<String> claimDueJobs(int limit) {
+        OffsetDateTime now = OffsetDateTime.now();
+        List<ContractPdfJob> jobs = contractPdfJobRepository
+                .findAllByNextAttemptAtBeforeOrderByNextAttemptAtAsc(now, Limit.of(limit));
+        // a claimed job is not due again until the claim has timed out, e.g. because this instance stopped
+        jobs.forEach(job -> job.setNextAttemptAt(now.plus(claimTimeout)));
+        return jobs.stream().map(ContractPdfJob::getContractId).toList();
+    }
+
+    /**
+     * Generate and store the pdf of a released contract. If this fails, the job is scheduled again with exponential
+     * backoff, once the attempts are exhausted the pdf of the contract is marked as failed until it is requested
+     * again.
+     *
+     * @param contractId id of the contract
+     */
+    public void generateContractPdf(String contractId) {
+        try {
+            ContractPdfDto contractPdfDto = contractStorageService.getContractPdfDto(contractId);
+            byte[] pdfBytes = pdfServiceClient.getPdfContract(contractPdfDto);
+            contractStorageService.saveContractPdf(contractId, pdfBytes);
+        } catch (Exception e) {
+            log.warn("Failed to generate pdf of contract {}", contractId, e);
+            transactionTemplate.executeWithoutResult(status -> retryOrFail(contractId));
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            contractPdfJobRepository.deleteById(contractId);
+            contractTemplateRepository.updatePdfStatusById(contractId, ContractPdfStatus.READY);
+        });
+        log.info("Generated pdf of contract {}", contractId);
+    }
+
+    private void retryOrFail(String contractId) {
+        contractPdfJobRepository.findById(contractId).ifPresent(job -> {
+            job.setAttempts(job.getAttempts() + 1);
+            if (job.getAttempts() >= maxAttempts) {
+                log.error("Giving up generating pdf of contract {} after {} attempts", contractId, job.getAttempts());
+                contractPdfJobRepository.delete(job);
+                contractTemplateRepository.updatePdfStatusById(contractId, ContractPdfStatus.FAILED);
+                return;
+            }
+            Duration backoff = initialBackoff.multipliedBy(1L << Math.min(job.getAttempts() - 1, 16));
+            job.setNextAttemptAt(OffsetDateTime.now().plus(backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff));
+        });
+    }
+}
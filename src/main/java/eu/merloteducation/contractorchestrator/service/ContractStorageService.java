@@ -16,6 +16,10 @@
 
 package eu.merloteducation.contractorchestrator.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import eu.merloteducation.contractorchestrator.models.dto.ContractBasicDtoCursorPage;
+import eu.merloteducation.contractorchestrator.models.dto.ContractVersionDto;
+import eu.merloteducation.contractorchestrator.models.dto.VersionedContractDto;
 import eu.merloteducation.contractorchestrator.models.entities.*;
 import eu.merloteducation.contractorchestrator.models.entities.cooperation.CooperationContractTemplate;
 import eu.merloteducation.contractorchestrator.models.entities.datadelivery.DataDeliveryContractTemplate;
@@ -24,6 +28,7 @@ import eu.merloteducation.contractorchestrator.models.entities.saas.SaasContract
 import eu.merloteducation.contractorchestrator.models.mappers.ContractFromDtoMapper;
 import eu.merloteducation.contractorchestrator.models.mappers.ContractToDtoMapper;
 import eu.merloteducation.contractorchestrator.models.mappers.ContractDtoToPdfMapper;
+import eu.merloteducation.contractorchestrator.repositories.ContractPdfJobRepository;
 import eu.merloteducation.contractorchestrator.repositories.ContractTemplateRepository;
 import eu.merloteducation.gxfscataloglibrary.models.credentials.ExtendedVerifiablePresentation;
 import eu.merloteducation.gxfscataloglibrary.models.selfdescriptions.PojoCredentialSubject;
@@ -53,16 +58,30 @@ import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.json.JSONException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.TemporalAmount;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import static org.springframework.http.HttpStatus.*;
 
@@ -73,7 +92,19 @@ public class ContractStorageService {
     private static final String INVALID_STATE_TRANSITION = "Requested transition is not allowed.";
     private static final String CONTRACT_NOT_FOUND = "Could not find a contract with this id.";
     private static final String CONTRACT_EDIT_FORBIDDEN = "Not allowed to edit this contract.";
+    private static final String CONTRACT_MODIFIED = "Contract has been modified in the meantime.";
     private static final String AUTHORIZATION = "Authorization";
+    private static final String INVALID_CURSOR = "Invalid continuation token.";
+    private static final String CURSOR_SEPARATOR = "~";
+
+    // same order as the keyset queries, newest contracts first with the id as tiebreaker
+    private static final Comparator<ContractTemplate> KEYSET_ORDER = Comparator
+            .comparing(ContractTemplate::getCreationDate)
+            .thenComparing(ContractTemplate::getId)
+            .reversed();
+
+    private record CursorPosition(OffsetDateTime creationDate, String id) {
+    }
 
     private final EntityManager entityManager;
 
@@ -81,12 +112,12 @@ public class ContractStorageService {
 
     private final OrganizationOrchestratorClient organizationOrchestratorClient;
 
-    private final PdfServiceClient pdfServiceClient;
-
     private final MessageQueueService messageQueueService;
 
     private final ContractTemplateRepository contractTemplateRepository;
 
+    private final ContractPdfJobRepository contractPdfJobRepository;
+
     private final ContractToDtoMapper contractToDtoMapper;
 
     private final ContractFromDtoMapper contractFromDtoMapper;
@@ -95,26 +126,38 @@ public class ContractStorageService {
 
     private final StorageClient storageClient;
 
+    private final Executor enrichmentExecutor;
+
+    private final Cache<String, MerlotParticipantDto> organizationDetailsCache;
+
+    private final Duration enrichmentTimeout;
+
     public ContractStorageService(@Autowired EntityManager entityManager,
                                   @Autowired ServiceOfferingOrchestratorClient serviceOfferingOrchestratorClient,
                                   @Autowired OrganizationOrchestratorClient organizationOrchestratorClient,
-                                  @Autowired PdfServiceClient pdfServiceClient,
                                   @Autowired MessageQueueService messageQueueService,
                                   @Autowired ContractTemplateRepository contractTemplateRepository,
+                                  @Autowired ContractPdfJobRepository contractPdfJobRepository,
                                   @Autowired ContractToDtoMapper contractToDtoMapper,
                                   @Autowired ContractFromDtoMapper contractFromDtoMapper,
                                   @Autowired ContractDtoToPdfMapper contractDtoToPdfMapper,
-                                  @Autowired StorageClient storageClient) {
+                                  @Autowired StorageClient storageClient,
+                                  @Autowired @Qualifier("enrichmentExecutor") Executor enrichmentExecutor,
+                                  @Autowired Cache<String, MerlotParticipantDto> organizationDetailsCache,
+                                  @Value("${enrichment.timeout:10s}") Duration enrichmentTimeout) {
         this.entityManager = entityManager;
         this.serviceOfferingOrchestratorClient = serviceOfferingOrchestratorClient;
         this.organizationOrchestratorClient = organizationOrchestratorClient;
-        this.pdfServiceClient = pdfServiceClient;
         this.messageQueueService = messageQueueService;
         this.contractTemplateRepository = contractTemplateRepository;
+        this.contractPdfJobRepository = contractPdfJobRepository;
         this.contractToDtoMapper = contractToDtoMapper;
         this.contractFromDtoMapper = contractFromDtoMapper;
         this.contractDtoToPdfMapper = contractDtoToPdfMapper;
         this.storageClient = storageClient;
+        this.enrichmentExecutor = enrichmentExecutor;
+        this.organizationDetailsCache = organizationDetailsCache;
+        this.enrichmentTimeout = enrichmentTimeout;
     }
 
 
@@ -275,23 +318,90 @@ public class ContractStorageService {
         return OffsetDateTime.now().plus(temporalAmount);
     }
 
-    private ContractBasicDto mapToContractBasicDto(ContractTemplate template, String authToken) {
-        MerlotParticipantDto providerDetails = organizationOrchestratorClient.getOrganizationDetails(template.getProviderId(),
-                Map.of(AUTHORIZATION, authToken));
-        MerlotParticipantDto consumerDetails = organizationOrchestratorClient.getOrganizationDetails(template.getConsumerId(),
-                Map.of(AUTHORIZATION, authToken));
-        ServiceOfferingDto offeringDetails = messageQueueService.remoteRequestOfferingDetails(template.getOfferingId());
+    private Page<ContractBasicDto> mapToContractBasicDtos(Page<ContractTemplate> templates, String authToken) {
+        return templates.map(contractBasicDtoMapper(templates.getContent(), authToken));
+    }
+
+    private List<ContractBasicDto> mapToContractBasicDtos(List<ContractTemplate> templates, String authToken) {
+        return templates.stream().map(contractBasicDtoMapper(templates, authToken)).toList();
+    }
 
-        return contractToDtoMapper.contractToContractBasicDto(template, providerDetails, consumerDetails, offeringDetails);
+    private Function<ContractTemplate, ContractBasicDto> contractBasicDtoMapper(List<ContractTemplate> templates,
+                                                                                String authToken) {
+        // resolve every distinct organization and offering of this page only once and concurrently
+        Map<String, CompletableFuture<MerlotParticipantDto>> organizationLookups = new HashMap<>();
+        Map<String, CompletableFuture<ServiceOfferingDto>> offeringLookups = new HashMap<>();
+        for (ContractTemplate template : templates) {
+            organizationLookups.computeIfAbsent(template.getProviderId(),
+                    orgaId -> requestOrganizationDetails(orgaId, authToken));
+            organizationLookups.computeIfAbsent(template.getConsumerId(),
+                    orgaId -> requestOrganizationDetails(orgaId, authToken));
+            offeringLookups.computeIfAbsent(template.getOfferingId(),
+                    messageQueueService::remoteRequestOfferingDetailsAsync);
+        }
+        // bounded by the same combined timeout as the lookups of a single contract
+        awaitLookups(Stream.concat(organizationLookups.values().stream(), offeringLookups.values().stream())
+                .toArray(CompletableFuture[]::new));
+
+        return template -> contractToDtoMapper.contractToContractBasicDto(template,
+                joinLookup(organizationLookups.get(template.getProviderId())),
+                joinLookup(organizationLookups.get(template.getConsumerId())),
+                joinLookup(offeringLookups.get(template.getOfferingId())));
+    }
+
+    private MerlotParticipantDto getOrganizationDetails(String orgaId, String authToken) {
+        // organization details are the same for every requesting user, hence the token is not part of the key
+        return organizationDetailsCache.get(orgaId, id -> organizationOrchestratorClient.getOrganizationDetails(id,
+                Map.of(AUTHORIZATION, authToken)));
+    }
+
+    private CompletableFuture<MerlotParticipantDto> requestOrganizationDetails(String orgaId, String authToken) {
+        return CompletableFuture.supplyAsync(() -> getOrganizationDetails(orgaId, authToken), enrichmentExecutor);
+    }
+
+    private <T> T joinLookup(CompletableFuture<T> lookup) {
+        try {
+            return lookup.join();
+        } catch (CompletionException e) {
+            // rethrow the original exception of the lookup so the error handling stays the same as for direct calls
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void awaitLookups(CompletableFuture<?>... lookups) {
+        try {
+            CompletableFuture.allOf(lookups).get(enrichmentTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new ResponseStatusException(GATEWAY_TIMEOUT, "Timed out while resolving the contract details.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(INTERNAL_SERVER_ERROR, "Interrupted while resolving the contract details.");
+        } catch (ExecutionException e) {
+            // failed lookups are rethrown individually when joined
+        }
     }
 
     private ContractDto castAndMapToContractDetailsDto(ContractTemplate template, String authToken) {
+        return castAndMapToContractDetailsDto(template, orgaId -> requestOrganizationDetails(orgaId, authToken));
+    }
 
-        MerlotParticipantDto providerDetails = organizationOrchestratorClient.getOrganizationDetails(template.getProviderId(),
-                Map.of(AUTHORIZATION, authToken));
-        MerlotParticipantDto consumerDetails = organizationOrchestratorClient.getOrganizationDetails(template.getConsumerId(),
-                Map.of(AUTHORIZATION, authToken));
-        ServiceOfferingDto offeringDetails = messageQueueService.remoteRequestOfferingDetails(template.getOfferingId());
+    private ContractDto castAndMapToContractDetailsDto(ContractTemplate template,
+                                                       Function<String, CompletableFuture<MerlotParticipantDto>>
+                                                               organizationLookup) {
+
+        // resolve both participants and the offering concurrently, bounded by a combined timeout
+        CompletableFuture<MerlotParticipantDto> providerLookup = organizationLookup.apply(template.getProviderId());
+        CompletableFuture<MerlotParticipantDto> consumerLookup = organizationLookup.apply(template.getConsumerId());
+        CompletableFuture<ServiceOfferingDto> offeringLookup =
+                messageQueueService.remoteRequestOfferingDetailsAsync(template.getOfferingId());
+        awaitLookups(providerLookup, consumerLookup, offeringLookup);
+
+        MerlotParticipantDto providerDetails = joinLookup(providerLookup);
+        MerlotParticipantDto consumerDetails = joinLookup(consumerLookup);
+        ServiceOfferingDto offeringDetails = joinLookup(offeringLookup);
 
         if (template instanceof DataDeliveryContractTemplate dataTemplate) {
             return contractToDtoMapper.contractToContractDto(dataTemplate,
@@ -315,6 +425,53 @@ public class ContractStorageService {
         return contract;
     }
 
+    private static ContractVersionDto toContractVersionDto(ContractTemplate contract) {
+        return new ContractVersionDto(contract.getId(), contract.getState(), contract.getVersion());
+    }
+
+    /**
+     * Format a contract version as entity tag.
+     *
+     * @param version version of the contract
+     * @return entity tag
+     */
+    public static String toETag(Long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Check the entity tags of an If-Match header against the current version of the contract.
+     *
+     * @param contract contract to check
+     * @param ifMatch  If-Match header of the request, null if the request is unconditional
+     */
+    private void checkIfMatch(ContractTemplate contract, String ifMatch) {
+        if (ifMatch == null) {
+            return;
+        }
+        String currentETag = toETag(contract.getVersion());
+        boolean matches = Arrays.stream(ifMatch.split(","))
+                .map(String::trim)
+                .anyMatch(eTag -> eTag.equals("*") || eTag.equals(currentETag));
+        if (!matches) {
+            throw new ResponseStatusException(PRECONDITION_FAILED, CONTRACT_MODIFIED);
+        }
+    }
+
+    /**
+     * Store a modified contract, failing if it has been modified concurrently since it was loaded.
+     *
+     * @param contract modified contract
+     * @return stored contract
+     */
+    private ContractTemplate saveContract(ContractTemplate contract) {
+        try {
+            return contractTemplateRepository.saveAndFlush(contract);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(PRECONDITION_FAILED, CONTRACT_MODIFIED);
+        }
+    }
+
     /**
      * Creates a new contract in the database based on the fields in the contractCreateRequest.
      * This is called immediately when a user clicks on the "Buchen" button in the frontend, hence no fields
@@ -440,8 +597,47 @@ public class ContractStorageService {
     public ContractDto updateContractTemplate(ContractDto editedContract,
                                               String authToken,
                                               String activeRoleOrgaId) throws JSONException {
+        return updateContractTemplate(editedContract, authToken, activeRoleOrgaId, null).getContract();
+    }
 
+    /**
+     * Given an edited ContractTemplate, this function verifies the updated fields and writes them to the database if
+     * allowed and the contract still matches the given entity tags.
+     *
+     * @param editedContract   contract template with edited fields
+     * @param authToken        the OAuth2 Token from the user requesting this action
+     * @param activeRoleOrgaId the currently selected role of the user
+     * @param ifMatch          If-Match header of the request, null to update unconditionally
+     * @return updated contract template from database and the version it was stored with
+     */
+    public VersionedContractDto updateContractTemplate(ContractDto editedContract,
+                                                       String authToken,
+                                                       String activeRoleOrgaId,
+                                                       String ifMatch) throws JSONException {
+        ContractTemplate contract = applyContractUpdate(editedContract, activeRoleOrgaId, ifMatch);
+        return new VersionedContractDto(castAndMapToContractDetailsDto(contract, authToken), contract.getVersion());
+    }
+
+    /**
+     * Same as {@link #updateContractTemplate(ContractDto, String, String, String)}, but only returns the new version
+     * and state of the contract instead of resolving its details.
+     *
+     * @param editedContract   contract template with edited fields
+     * @param activeRoleOrgaId the currently selected role of the user
+     * @param ifMatch          If-Match header of the request, null to update unconditionally
+     * @return new version and state of the contract
+     */
+    public ContractVersionDto updateContractTemplateMinimal(ContractDto editedContract,
+                                                            String activeRoleOrgaId,
+                                                            String ifMatch) throws JSONException {
+        return toContractVersionDto(applyContractUpdate(editedContract, activeRoleOrgaId, ifMatch));
+    }
+
+    private ContractTemplate applyContractUpdate(ContractDto editedContract,
+                                                 String activeRoleOrgaId,
+                                                 String ifMatch) throws JSONException {
         ContractTemplate contract = this.loadContract(editedContract.getDetails().getId());
+        checkIfMatch(contract, ifMatch);
 
         boolean isConsumer = activeRoleOrgaId.equals(contract.getConsumerId());
         boolean isProvider = activeRoleOrgaId.equals(contract.getProviderId());
@@ -465,8 +661,7 @@ public class ContractStorageService {
         }
 
         // at this point we have a valid requested update, save it in the db
-        contract = contractTemplateRepository.save(contract);
-        return castAndMapToContractDetailsDto(contract, authToken);
+        return saveContract(contract);
     }
 
     /**
@@ -485,7 +680,67 @@ public class ContractStorageService {
                                                        String activeRoleOrgaId,
                                                        String userName,
                                                        String authToken) {
+        return transitionContractTemplateState(contractId, targetState, activeRoleOrgaId, userName, authToken, null)
+                .getContract();
+    }
+
+    /**
+     * Transition the contract template attached to the given id to the target state if allowed and the contract
+     * still matches the given entity tags.
+     *
+     * @param contractId       id of the contract template to transition
+     * @param targetState      target state of the contract template
+     * @param activeRoleOrgaId the currently selected role of the user
+     * @param userName         the name of the user that requested this action
+     * @param authToken        the OAuth2 Token from the user requesting this action
+     * @param ifMatch          If-Match header of the request, null to transition unconditionally
+     * @return updated contract template from database and the version it was stored with
+     */
+    @Transactional(rollbackOn = {ResponseStatusException.class})
+    public VersionedContractDto transitionContractTemplateState(String contractId,
+                                                                ContractState targetState,
+                                                                String activeRoleOrgaId,
+                                                                String userName,
+                                                                String authToken,
+                                                                String ifMatch) {
+        ContractTemplate contract = applyTransition(contractId, targetState, activeRoleOrgaId, userName, ifMatch);
+        return new VersionedContractDto(castAndMapToContractDetailsDto(contract, authToken),
+                storedVersion(contract, targetState));
+    }
+
+    /**
+     * Same as {@link #transitionContractTemplateState(String, ContractState, String, String, String, String)}, but
+     * only returns the new version and state of the contract, so the details of the contract are not resolved.
+     *
+     * @param contractId       id of the contract template to transition
+     * @param targetState      target state of the contract template
+     * @param activeRoleOrgaId the currently selected role of the user
+     * @param userName         the name of the user that requested this action
+     * @param ifMatch          If-Match header of the request, null to transition unconditionally
+     * @return new version and state of the contract
+     */
+    @Transactional(rollbackOn = {ResponseStatusException.class})
+    public ContractVersionDto transitionContractTemplateStateMinimal(String contractId,
+                                                                     ContractState targetState,
+                                                                     String activeRoleOrgaId,
+                                                                     String userName,
+                                                                     String ifMatch) {
+        ContractTemplate contract = applyTransition(contractId, targetState, activeRoleOrgaId, userName, ifMatch);
+        return new ContractVersionDto(contract.getId(), contract.getState(), storedVersion(contract, targetState));
+    }
+
+    // a purged contract has no version anymore
+    private static Long storedVersion(ContractTemplate contract, ContractState targetState) {
+        return targetState == ContractState.PURGED ? null : contract.getVersion();
+    }
+
+    private ContractTemplate applyTransition(String contractId,
+                                             ContractState targetState,
+                                             String activeRoleOrgaId,
+                                             String userName,
+                                             String ifMatch) {
         ContractTemplate contract = this.loadContract(contractId);
+        checkIfMatch(contract, ifMatch);
 
         boolean isConsumer = activeRoleOrgaId.equals(contract.getConsumerId());
         boolean isProvider = activeRoleOrgaId.equals(contract.getProviderId());
@@ -518,7 +773,7 @@ public class ContractStorageService {
             }
             contractTemplateRepository.delete(contract);
             messageQueueService.sendContractPurgedMessage(new ContractTemplateUpdated(contract.getId(), contract.getOfferingId()));
-            return castAndMapToContractDetailsDto(contract, authToken);
+            return contract;
         }
 
         // check if transitioning to the target state is generally allowed
@@ -528,29 +783,39 @@ public class ContractStorageService {
             throw new ResponseStatusException(BAD_REQUEST, e.getMessage());
         }
 
-        // if all checks passed, save the new state of the contract
-        contractTemplateRepository.save(contract);
-
-        ContractDto contractDto = castAndMapToContractDetailsDto(contract, authToken);
-
         if (targetState == ContractState.RELEASED) {
-            // if successfully released, create and save the contract pdf
-            saveContractPdf(contractDto);
+            // the contract pdf is generated in the background by the ContractPdfService
+            contract.setPdfStatus(ContractPdfStatus.PENDING);
+            contractPdfJobRepository.save(new ContractPdfJob(contract.getId()));
         }
 
-        return contractDto;
+        // if all checks passed, save the new state of the contract
+        return saveContract(contract);
     }
 
-    private void saveContractPdf(ContractDto contractDto) {
+    /**
+     * Build the data the pdf of a contract is generated from. As this is done in the background, the organization
+     * details are requested over the message bus instead of with the token of a user.
+     *
+     * @param contractId id of the contract
+     * @return contract pdf data
+     */
+    @Transactional
+    public ContractPdfDto getContractPdfDto(String contractId) {
+        ContractTemplate contract = loadContract(contractId);
+        return castAndMapToContractPdfDto(castAndMapToContractDetailsDto(contract,
+                messageQueueService::remoteRequestOrganizationDetailsAsync));
+    }
 
-        ContractPdfDto contractPdfDto = castAndMapToContractPdfDto(contractDto);
-        try {
-            byte[] pdfBytes = pdfServiceClient.getPdfContract(contractPdfDto);
-            String fileName = contractDto.getDetails().getId() + ".pdf";
-            storageClient.pushItem(getPathToContractPdf(contractDto.getDetails().getId()), fileName, pdfBytes);
-        } catch (Exception e) {
-            throw new ResponseStatusException(INTERNAL_SERVER_ERROR, "Encountered error while processing the contract.");
-        }
+    /**
+     * Store the generated pdf of a contract.
+     *
+     * @param contractId id of the contract
+     * @param pdfBytes   contract pdf
+     * @throws StorageClientException failed to upload the pdf
+     */
+    public void saveContractPdf(String contractId, byte[] pdfBytes) throws StorageClientException {
+        storageClient.pushItem(getPathToContractPdf(contractId), contractId + ".pdf", pdfBytes);
     }
 
     private ContractPdfDto castAndMapToContractPdfDto(ContractDto contractDto) {
@@ -588,8 +853,90 @@ public class ContractStorageService {
             contractTemplates = contractTemplateRepository.findAllByOrgaIdAndState(orgaId, statusFilter, pageable);
         }
 
+        return mapToContractBasicDtos(contractTemplates, authToken);
+    }
+
+    /**
+     * Returns contracts from the database where the specified organization is either the consumer or provider,
+     * newest first, using keyset pagination. In contrast to offset pagination no count is computed and the cost
+     * of a request does not depend on how far the client has already scrolled.
+     *
+     * @param orgaId       id of the organization requesting this data
+     * @param size         maximum number of contracts to return
+     * @param cursor       continuation token of the previous request, null for the first request
+     * @param statusFilter optional status filter for the contracts
+     * @param authToken    the OAuth2 Token from the user requesting this action
+     * @return slice of contracts that are related to this organization and the token to continue with
+     */
+    public ContractBasicDtoCursorPage getOrganizationContracts(String orgaId, int size, String cursor,
+                                                              ContractState statusFilter, String authToken) {
+        String regex = "did:web:[-.A-Za-z0-9:%#]*";
+        if (!orgaId.matches(regex) || size < 1) {
+            throw new ResponseStatusException(UNPROCESSABLE_ENTITY, INVALID_FIELD_DATA);
+        }
+
+        // fetch one additional contract to know whether there is a following slice
+        Limit limit = Limit.of(size + 1);
+        List<ContractTemplate> providedTemplates;
+        List<ContractTemplate> consumedTemplates;
+        if (cursor == null) {
+            providedTemplates = statusFilter == null
+                    ? contractTemplateRepository.findKeysetByProviderId(orgaId, limit)
+                    : contractTemplateRepository.findKeysetByProviderIdAndState(orgaId, statusFilter, limit);
+            consumedTemplates = statusFilter == null
+                    ? contractTemplateRepository.findKeysetByConsumerId(orgaId, limit)
+                    : contractTemplateRepository.findKeysetByConsumerIdAndState(orgaId, statusFilter, limit);
+        } else {
+            CursorPosition last = decodeCursor(cursor);
+            providedTemplates = statusFilter == null
+                    ? contractTemplateRepository.findKeysetByProviderIdAfter(orgaId, last.creationDate(),
+                    last.id(), limit)
+                    : contractTemplateRepository.findKeysetByProviderIdAndStateAfter(orgaId, statusFilter,
+                    last.creationDate(), last.id(), limit);
+            consumedTemplates = statusFilter == null
+                    ? contractTemplateRepository.findKeysetByConsumerIdAfter(orgaId, last.creationDate(),
+                    last.id(), limit)
+                    : contractTemplateRepository.findKeysetByConsumerIdAndStateAfter(orgaId, statusFilter,
+                    last.creationDate(), last.id(), limit);
+        }
+        List<ContractTemplate> contractTemplates = mergeKeysetSlices(providedTemplates, consumedTemplates, limit);
 
-        return contractTemplates.map(template -> mapToContractBasicDto(template, authToken));
+        String nextCursor = null;
+        if (contractTemplates.size() > size) {
+            contractTemplates = contractTemplates.subList(0, size);
+            nextCursor = encodeCursor(contractTemplates.get(size - 1));
+        }
+        return new ContractBasicDtoCursorPage(mapToContractBasicDtos(contractTemplates, authToken), nextCursor);
+    }
+
+    private List<ContractTemplate> mergeKeysetSlices(List<ContractTemplate> providedTemplates,
+                                                     List<ContractTemplate> consumedTemplates, Limit limit) {
+        // a contract shows up on both sides if the organization is provider and consumer at the same time
+        Map<String, ContractTemplate> merged = new HashMap<>();
+        providedTemplates.forEach(template -> merged.put(template.getId(), template));
+        consumedTemplates.forEach(template -> merged.putIfAbsent(template.getId(), template));
+        return merged.values().stream()
+                .sorted(KEYSET_ORDER)
+                .limit(limit.max())
+                .toList();
+    }
+
+    private String encodeCursor(ContractTemplate template) {
+        String position = template.getCreationDate() + CURSOR_SEPARATOR + template.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private CursorPosition decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = position.split(CURSOR_SEPARATOR, 2);
+            if (parts.length != 2) {
+                throw new ResponseStatusException(UNPROCESSABLE_ENTITY, INVALID_CURSOR);
+            }
+            return new CursorPosition(OffsetDateTime.parse(parts[0]), parts[1]);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new ResponseStatusException(UNPROCESSABLE_ENTITY, INVALID_CURSOR);
+        }
     }
 
     /**
@@ -600,9 +947,31 @@ public class ContractStorageService {
      * @return contract object from the database
      */
     public ContractDto getContractDetails(String contractId, String authToken) {
+        return getVersionedContractDetails(contractId, authToken).getContract();
+    }
+
+    /**
+     * For a given id, return the corresponding contract database entry together with the version it was loaded in,
+     * so the entity tag always matches the returned details.
+     *
+     * @param contractId id of the contract
+     * @param authToken  the OAuth2 Token from the user requesting this action
+     * @return contract object from the database and its version
+     */
+    public VersionedContractDto getVersionedContractDetails(String contractId, String authToken) {
         ContractTemplate contract = this.loadContract(contractId);
 
-        return castAndMapToContractDetailsDto(contract, authToken);
+        return new VersionedContractDto(castAndMapToContractDetailsDto(contract, authToken), contract.getVersion());
+    }
+
+    /**
+     * For a given id, return the entity tag of the current version of the contract without loading its details.
+     *
+     * @param contractId id of the contract
+     * @return entity tag of the contract, empty if it does not exist
+     */
+    public Optional<String> findContractETag(String contractId) {
+        return contractTemplateRepository.findVersionById(contractId).map(ContractStorageService::toETag);
     }
 
     /**
@@ -682,6 +1051,34 @@ public class ContractStorageService {
         return storageClient.getItem(contract.getId(), attachmentId);
     }
 
+    /**
+     * Returns the status of the pdf of a contract, empty if the contract does not exist or was released before the
+     * pdf was generated in the background.
+     *
+     * @param contractId id of the contract
+     * @return pdf status
+     */
+    public Optional<ContractPdfStatus> getContractPdfStatus(String contractId) {
+        return contractTemplateRepository.findPdfStatusById(contractId);
+    }
+
+    /**
+     * Queue the generation of the pdf of a contract again after all attempts have failed, e.g. because the pdf
+     * service was unavailable for longer than the retry budget. Does nothing if the pdf has not failed.
+     *
+     * @param contractId id of the contract
+     * @return true if the generation was queued again
+     */
+    @Transactional
+    public boolean retryFailedContractPdf(String contractId) {
+        if (contractTemplateRepository.updatePdfStatusById(contractId, ContractPdfStatus.FAILED,
+                ContractPdfStatus.PENDING) == 0) {
+            return false;
+        }
+        contractPdfJobRepository.save(new ContractPdfJob(contractId));
+        return true;
+    }
+
     public byte[] getContractPdf(String contractId)
         throws IOException, StorageClientException {
         return storageClient.getItem(getPathToContractPdf(contractId), contractId + ".pdf");
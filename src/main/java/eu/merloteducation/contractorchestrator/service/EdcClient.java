@@ -31,23 +31,24 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.service.annotation.DeleteExchange;
 import org.springframework.web.service.annotation.GetExchange;
 import org.springframework.web.service.annotation.PostExchange;
+import reactor.core.publisher.Mono;
 
 
 public interface EdcClient {
     @PostExchange("/v3/assets")
-    IdResponse createAsset(@RequestBody AssetCreateRequest assetCreateRequest);
+    Mono<IdResponse> createAssetAsync(@RequestBody AssetCreateRequest assetCreateRequest);
 
     @PostExchange("/v2/policydefinitions")
-    IdResponse createPolicy(@RequestBody PolicyCreateRequest policyCreateRequest);
+    Mono<IdResponse> createPolicyAsync(@RequestBody PolicyCreateRequest policyCreateRequest);
 
     @PostExchange("/v2/contractdefinitions")
-    IdResponse createContractDefinition(@RequestBody ContractDefinitionCreateRequest contractDefinitionCreateRequest);
+    Mono<IdResponse> createContractDefinitionAsync(@RequestBody ContractDefinitionCreateRequest contractDefinitionCreateRequest);
 
     @PostExchange("/v2/catalog/request")
-    DcatCatalog queryCatalog(@RequestBody CatalogRequest catalogRequest);
+    Mono<DcatCatalog> queryCatalogAsync(@RequestBody CatalogRequest catalogRequest);
 
     @PostExchange("/v2/contractnegotiations")
-    IdResponse negotiateOffer(@RequestBody NegotiationInitiateRequest negotiationInitiateRequest);
+    Mono<IdResponse> negotiateOfferAsync(@RequestBody NegotiationInitiateRequest negotiationInitiateRequest);
 
     @GetExchange("/v2/contractnegotiations/{negotiationId}")
     ContractNegotiation checkOfferStatus(@PathVariable String negotiationId);
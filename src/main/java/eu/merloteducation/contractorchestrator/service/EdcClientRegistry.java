@@ -0,0 +1,118 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.contractorchestrator.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import eu.merloteducation.modelslib.api.organization.OrganizationConnectorTransferDto;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.support.WebClientAdapter;
+import org.springframework.web.service.invoker.HttpServiceProxyFactory;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides EDC clients for organization connectors. Clients are reused across requests as long as the management
+ * URL and the access token of the connector stay the same, and share one connection pool.
+ */
+@Component
+public class EdcClientRegistry {
+
+    /**
+     * Identifies a client by everything it is configured with, so changed connector settings result in a new client.
+     *
+     * @param managementBaseUrl management base url of the connector
+     * @param accessToken access token of the connector
+     */
+    public record ConnectorKey(String managementBaseUrl, String accessToken) {
+
+        /**
+         * Masks the access token, as keys may end up in logs, e.g. via cache statistics or debugging output.
+         *
+         * @return string representation without the access token
+         */
+        @Override
+        public String toString() {
+            return "ConnectorKey[managementBaseUrl=" + managementBaseUrl + ", accessToken=***]";
+        }
+    }
+
+    private final Cache<ConnectorKey, EdcClient> edcClientCache;
+
+    private final HttpClient httpClient;
+
+    private final DistributionSummary catalogPayloadSize;
+
+    public EdcClientRegistry(@Autowired Cache<ConnectorKey, EdcClient> edcClientCache,
+                             @Autowired ConnectionProvider edcConnectionProvider,
+                             @Autowired MeterRegistry meterRegistry) {
+        this.edcClientCache = edcClientCache;
+        this.httpClient = HttpClient.create(edcConnectionProvider);
+        this.catalogPayloadSize = DistributionSummary.builder("edc.catalog.payload.size")
+                .baseUnit("bytes")
+                .description("Size of catalog responses received from connectors")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get the client for the given connector, creating it if there is none yet.
+     *
+     * @param connector connector to communicate with
+     * @return edc client
+     */
+    public EdcClient getClient(OrganizationConnectorTransferDto connector) {
+        return edcClientCache.get(new ConnectorKey(connector.getManagementBaseUrl(),
+                connector.getConnectorAccessToken()), this::createClient);
+    }
+
+    private EdcClient createClient(ConnectorKey key) {
+        WebClient webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .baseUrl(key.managementBaseUrl())
+                .defaultHeader("X-API-Key", key.accessToken())
+                .filter(this::recordCatalogPayloadSize)
+                .build();
+        HttpServiceProxyFactory httpServiceProxyFactory = HttpServiceProxyFactory
+                .builder()
+                .exchangeAdapter(WebClientAdapter.create(webClient))
+                .build();
+        return httpServiceProxyFactory.createClient(EdcClient.class);
+    }
+
+    private Mono<ClientResponse> recordCatalogPayloadSize(ClientRequest request, ExchangeFunction next) {
+        Mono<ClientResponse> response = next.exchange(request);
+        if (!request.url().getPath().endsWith("/catalog/request")) {
+            return response;
+        }
+        // catalogs are usually sent chunked without a content length, hence the received bytes are counted
+        return response.map(r -> r.mutate().body(body -> {
+            AtomicLong size = new AtomicLong();
+            return body.doOnNext(buffer -> size.addAndGet(buffer.readableByteCount()))
+                    .doOnComplete(() -> catalogPayloadSize.record(size.get()));
+        }).build());
+    }
+}
@@ -16,6 +16,8 @@
 
 package eu.merloteducation.contractorchestrator.service;
 
+import eu.merloteducation.contractorchestrator.models.edc.QueryCatalogRequest;
+import eu.merloteducation.contractorchestrator.models.edc.QuerySpec;
 import eu.merloteducation.contractorchestrator.models.entities.ContractState;
 import eu.merloteducation.gxfscataloglibrary.models.selfdescriptions.merlot.serviceofferings.MerlotDataDeliveryServiceOfferingCredentialSubject;
 import eu.merloteducation.modelslib.api.contract.ContractDto;
@@ -44,34 +46,57 @@ import eu.merloteducation.modelslib.edc.policy.Policy;
 import eu.merloteducation.modelslib.edc.policy.PolicyCreateRequest;
 import eu.merloteducation.modelslib.edc.transfer.IonosS3TransferProcess;
 import eu.merloteducation.modelslib.edc.transfer.TransferRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 
 @Service
 @Slf4j
 public class EdcOrchestrationService {
+    private static final String CATALOG_QUERY_METRIC = "edc.catalog.query";
+    private static final String CATALOG_DATASETS_METRIC = "edc.catalog.datasets";
+
     private final MessageQueueService messageQueueService;
     private final ContractStorageService contractStorageService;
-    private final ObjectProvider<EdcClient> edcClientProvider;
+    private final EdcClientRegistry edcClientRegistry;
     private final TaskScheduler taskScheduler;
+    private final Duration edcStepTimeout;
+    private final int catalogPageSize;
+    private final int catalogScanLimit;
+    private final MeterRegistry meterRegistry;
 
     public EdcOrchestrationService(@Autowired MessageQueueService messageQueueService,
                                    @Autowired ContractStorageService contractStorageService,
-                                   @Autowired ObjectProvider<EdcClient> edcClientProvider,
-                                   @Autowired TaskScheduler taskScheduler) {
+                                   @Autowired EdcClientRegistry edcClientRegistry,
+                                   @Autowired TaskScheduler taskScheduler,
+                                   @Value("${edc-client.step-timeout:30s}") Duration edcStepTimeout,
+                                   @Value("${edc-client.catalog.page-size:50}") int catalogPageSize,
+                                   @Value("${edc-client.catalog.scan-limit:5000}") int catalogScanLimit,
+                                   @Autowired MeterRegistry meterRegistry) {
         this.messageQueueService = messageQueueService;
         this.contractStorageService = contractStorageService;
-        this.edcClientProvider = edcClientProvider;
+        this.edcClientRegistry = edcClientRegistry;
         this.taskScheduler = taskScheduler;
+        this.edcStepTimeout = edcStepTimeout;
+        this.catalogPageSize = catalogPageSize;
+        this.catalogScanLimit = catalogScanLimit;
+        this.meterRegistry = meterRegistry;
     }
 
     private DataDeliveryContractDto loadContract(String contractId, String activeRoleOrgaId, String authToken) {
@@ -101,12 +126,17 @@ public class EdcOrchestrationService {
         }
     }
 
-    private OrganizationConnectorTransferDto getOrgaConnector(String orgaId, String connectorId) {
+    private CompletableFuture<OrganizationConnectorTransferDto> requestOrgaConnector(String orgaId,
+                                                                                   String connectorId) {
         return messageQueueService
-                .remoteRequestOrganizationConnectorByConnectorId(
+                .remoteRequestOrganizationConnectorByConnectorIdAsync(
                         orgaId, connectorId);
     }
 
+    private OrganizationConnectorTransferDto getOrgaConnector(String orgaId, String connectorId) {
+        return MessageQueueService.awaitReply(requestOrgaConnector(orgaId, connectorId));
+    }
+
     /**
      * Given a contract id, a role and a set of represented organizations, start the automated EDC negotiation
      * over the contract.
@@ -121,13 +151,16 @@ public class EdcOrchestrationService {
         TransferProvisioningDto providerTransferDto = contractDto.getProvisioning().getProviderTransferProvisioning();
         TransferProvisioningDto consumerTransferDto = contractDto.getProvisioning().getConsumerTransferProvisioning();
 
-        OrganizationConnectorTransferDto providerConnector = getOrgaConnector(contractDto.getDetails().getProviderId(),
-                providerTransferDto.getSelectedConnectorId());
-        OrganizationConnectorTransferDto consumerConnector = getOrgaConnector(contractDto.getDetails().getConsumerId(),
-                consumerTransferDto.getSelectedConnectorId());
+        // look up both connectors concurrently
+        CompletableFuture<OrganizationConnectorTransferDto> providerConnectorRequest =
+                requestOrgaConnector(contractDto.getDetails().getProviderId(), providerTransferDto.getSelectedConnectorId());
+        CompletableFuture<OrganizationConnectorTransferDto> consumerConnectorRequest =
+                requestOrgaConnector(contractDto.getDetails().getConsumerId(), consumerTransferDto.getSelectedConnectorId());
+        OrganizationConnectorTransferDto providerConnector = MessageQueueService.awaitReply(providerConnectorRequest);
+        OrganizationConnectorTransferDto consumerConnector = MessageQueueService.awaitReply(consumerConnectorRequest);
 
-        EdcClient providerEdcClient = edcClientProvider.getObject(providerConnector);
-        EdcClient consumerEdcClient = edcClientProvider.getObject(consumerConnector);
+        EdcClient providerEdcClient = edcClientRegistry.getClient(providerConnector);
+        EdcClient consumerEdcClient = edcClientRegistry.getClient(consumerConnector);
 
         String contractUuid = contractDto.getDetails().getId().replace("Contract:", "");
         String instanceUuid = contractUuid + "_" + UUID.randomUUID();
@@ -152,9 +185,6 @@ public class EdcOrchestrationService {
                 .dataAddress(getProviderDataAddress(providerTransferDto, providerConnector))
                 .build();
 
-        log.info("Creating Asset {} on {}", assetCreateRequest, providerConnector);
-        IdResponse assetIdResponse = providerEdcClient.createAsset(assetCreateRequest);
-
         // create policy
         PolicyCreateRequest policyCreateRequest = PolicyCreateRequest.builder()
                 .id(policyId)
@@ -165,14 +195,41 @@ public class EdcOrchestrationService {
                         .permission(Collections.emptyList())
                         .build())
                 .build();
-        log.info("Creating Policy {} on {}", policyCreateRequest, providerConnector);
-        IdResponse policyIdResponse = providerEdcClient.createPolicy(policyCreateRequest);
 
-        // create contract definition
+        // asset and policy do not depend on each other, hence they are created concurrently
+        Mono<IdResponse> assetCreation = Mono.defer(() -> {
+            log.info("Creating Asset {} on {}", assetCreateRequest, providerConnector);
+            return withStepTimeout(providerEdcClient.createAssetAsync(assetCreateRequest), "asset creation");
+        });
+        Mono<IdResponse> policyCreation = Mono.defer(() -> {
+            log.info("Creating Policy {} on {}", policyCreateRequest, providerConnector);
+            return withStepTimeout(providerEdcClient.createPolicyAsync(policyCreateRequest), "policy creation");
+        });
+
+        return Mono.zip(assetCreation, policyCreation)
+                .flatMap(created -> createContractDefinition(providerEdcClient, providerConnector,
+                        contractDefinitionId, created.getT1().getId(), created.getT2().getId())
+                        .thenReturn(created.getT1().getId()))
+                .flatMap(createdAssetId -> findDatasetInCatalog(consumerEdcClient, providerConnector,
+                        consumerConnector, createdAssetId))
+                .flatMap(catalogMatch -> negotiateOffer(consumerEdcClient, providerConnector, consumerConnector,
+                        catalogMatch.getT1(), catalogMatch.getT2()))
+                .block();
+    }
+
+    private <T> Mono<T> withStepTimeout(Mono<T> step, String stepName) {
+        return step.timeout(edcStepTimeout)
+                .onErrorMap(TimeoutException.class, e -> new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT,
+                        "Connector did not respond in time during " + stepName + "."));
+    }
+
+    private Mono<IdResponse> createContractDefinition(EdcClient providerEdcClient,
+                                                      OrganizationConnectorTransferDto providerConnector,
+                                                      String contractDefinitionId, String assetId, String policyId) {
         ContractDefinitionCreateRequest contractDefinitionCreateRequest = ContractDefinitionCreateRequest.builder()
                 .id(contractDefinitionId)
-                .contractPolicyId(policyIdResponse.getId())
-                .accessPolicyId(policyIdResponse.getId())
+                .contractPolicyId(policyId)
+                .accessPolicyId(policyId)
                 .assetsSelector(List.of(Criterion.builder()
                         .operandLeft("https://w3id.org/edc/v0.0.1/ns/id")
                         .operator("=")
@@ -180,26 +237,87 @@ public class EdcOrchestrationService {
                         .build()))
                 .build();
         log.info("Creating Contract Definition {} on {}", contractDefinitionCreateRequest, providerConnector);
-        providerEdcClient.createContractDefinition(contractDefinitionCreateRequest);
-
-        // schedule deletion of the contract definition in 5 minutes
-        // note that we currently cannot delete Assets etc. once they are bound to a contract agreement
-        // which appears to be irrevocable in our current EDC version.
-        taskScheduler.schedule(new EdcContractDefinitionRevokeTask(providerEdcClient,
-                contractDefinitionCreateRequest.getId()), Instant.now().plusSeconds(300));
+        return withStepTimeout(providerEdcClient.createContractDefinitionAsync(contractDefinitionCreateRequest),
+                "contract definition creation")
+                // schedule deletion of the contract definition in 5 minutes
+                // note that we currently cannot delete Assets etc. once they are bound to a contract agreement
+                // which appears to be irrevocable in our current EDC version.
+                .doOnNext(response -> taskScheduler.schedule(new EdcContractDefinitionRevokeTask(providerEdcClient,
+                        contractDefinitionCreateRequest.getId()), Instant.now().plusSeconds(300)));
+    }
 
+    private Mono<Tuple2<DcatCatalog, DcatDataset>> findDatasetInCatalog(EdcClient consumerEdcClient,
+                                                                        OrganizationConnectorTransferDto providerConnector,
+                                                                        OrganizationConnectorTransferDto consumerConnector,
+                                                                        String assetId) {
         // consumer side
-        // find the offering we are interested in
-        CatalogRequest catalogRequest = new CatalogRequest(providerConnector.getProtocolBaseUrl());
+        // find the offering we are interested in, only asking the provider for the asset itself
+        QuerySpec assetQuery = new QuerySpec(0, catalogPageSize, List.of(Criterion.builder()
+                .operandLeft("https://w3id.org/edc/v0.0.1/ns/id")
+                .operator("=")
+                .operandRight(assetId)
+                .build()));
+        return queryCatalog(consumerEdcClient, providerConnector, consumerConnector, assetQuery, "filtered")
+                .flatMap(catalog -> findDataset(catalog, assetId)
+                        .map(dataset -> Mono.just(Tuples.of(catalog, dataset)))
+                        // connectors that do not support the filter returned the first unfiltered page, which is
+                        // why these are scanned page by page from the second page on
+                        .orElseGet(() -> scanNextPage(consumerEdcClient, providerConnector, consumerConnector,
+                                assetId, catalog, catalogPageSize)));
+    }
+
+    private Mono<Tuple2<DcatCatalog, DcatDataset>> scanCatalog(EdcClient consumerEdcClient,
+                                                               OrganizationConnectorTransferDto providerConnector,
+                                                               OrganizationConnectorTransferDto consumerConnector,
+                                                               String assetId, int offset) {
+        QuerySpec pageQuery = new QuerySpec(offset, catalogPageSize, Collections.emptyList());
+        return queryCatalog(consumerEdcClient, providerConnector, consumerConnector, pageQuery, "scan")
+                .flatMap(catalog -> findDataset(catalog, assetId)
+                        .map(dataset -> Mono.just(Tuples.of(catalog, dataset)))
+                        .orElseGet(() -> scanNextPage(consumerEdcClient, providerConnector, consumerConnector,
+                                assetId, catalog, offset + catalogPageSize)));
+    }
+
+    private Mono<Tuple2<DcatCatalog, DcatDataset>> scanNextPage(EdcClient consumerEdcClient,
+                                                                OrganizationConnectorTransferDto providerConnector,
+                                                                OrganizationConnectorTransferDto consumerConnector,
+                                                                String assetId, DcatCatalog previousPage,
+                                                                int nextOffset) {
+        // a page that is not full is the last one
+        if (previousPage.getDataset() == null || previousPage.getDataset().size() < catalogPageSize
+                || nextOffset >= catalogScanLimit) {
+            return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Could not find the asset in the provider catalog."));
+        }
+        return scanCatalog(consumerEdcClient, providerConnector, consumerConnector, assetId, nextOffset);
+    }
+
+    private Mono<DcatCatalog> queryCatalog(EdcClient consumerEdcClient,
+                                           OrganizationConnectorTransferDto providerConnector,
+                                           OrganizationConnectorTransferDto consumerConnector,
+                                           QuerySpec querySpec, String mode) {
+        CatalogRequest catalogRequest = new QueryCatalogRequest(providerConnector.getProtocolBaseUrl(), querySpec);
         log.info("Query Catalog with request {} on {}", catalogRequest, consumerConnector);
-        DcatCatalog catalog = consumerEdcClient.queryCatalog(catalogRequest);
-        List<DcatDataset> matches =
-                catalog.getDataset().stream().filter(d -> d.getAssetId().equals(assetIdResponse.getId())).toList();
-        if (matches.size() != 1) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Could not find the asset in the provider catalog.");
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return withStepTimeout(consumerEdcClient.queryCatalogAsync(catalogRequest), "catalog query")
+                .doOnSuccess(catalog -> meterRegistry.summary(CATALOG_DATASETS_METRIC, "mode", mode)
+                        .record(catalog == null || catalog.getDataset() == null ? 0 : catalog.getDataset().size()))
+                .doFinally(signal -> sample.stop(meterRegistry.timer(CATALOG_QUERY_METRIC, "mode", mode)));
+    }
+
+    private Optional<DcatDataset> findDataset(DcatCatalog catalog, String assetId) {
+        if (catalog.getDataset() == null) {
+            return Optional.empty();
         }
-        DcatDataset dataset = matches.get(0);
+        List<DcatDataset> matches =
+                catalog.getDataset().stream().filter(d -> d.getAssetId().equals(assetId)).toList();
+        return matches.size() == 1 ? Optional.of(matches.get(0)) : Optional.empty();
+    }
 
+    private Mono<IdResponse> negotiateOffer(EdcClient consumerEdcClient,
+                                            OrganizationConnectorTransferDto providerConnector,
+                                            OrganizationConnectorTransferDto consumerConnector,
+                                            DcatCatalog catalog, DcatDataset dataset) {
         // negotiate offer
         NegotiationInitiateRequest negotiationInitiateRequest = NegotiationInitiateRequest.builder()
                 .connectorId(catalog.getParticipantId())
@@ -213,7 +331,7 @@ public class EdcOrchestrationService {
                         .build())
                 .build();
         log.info("Negotiate Offer with request {} on {}", negotiationInitiateRequest, consumerConnector);
-        return consumerEdcClient.negotiateOffer(negotiationInitiateRequest);
+        return withStepTimeout(consumerEdcClient.negotiateOfferAsync(negotiationInitiateRequest), "offer negotiation");
     }
 
     /**
@@ -232,7 +350,12 @@ public class EdcOrchestrationService {
         OrganizationConnectorTransferDto consumerConnector = getOrgaConnector(contractDto.getDetails().getConsumerId(),
                 contractDto.getProvisioning().getConsumerTransferProvisioning().getSelectedConnectorId());
 
-        EdcClient consumerEdcClient = edcClientProvider.getObject(consumerConnector);
+        return checkNegotiationStatus(negotiationId, consumerConnector, edcClientRegistry.getClient(consumerConnector));
+    }
+
+    private ContractNegotiation checkNegotiationStatus(String negotiationId,
+                                                       OrganizationConnectorTransferDto consumerConnector,
+                                                       EdcClient consumerEdcClient) {
         log.info("Check status of offer {} on {}", negotiationId, consumerConnector);
         return consumerEdcClient.checkOfferStatus(negotiationId);
     }
@@ -252,14 +375,18 @@ public class EdcOrchestrationService {
         TransferProvisioningDto providerTransferDto = contractDto.getProvisioning().getProviderTransferProvisioning();
         TransferProvisioningDto consumerTransferDto = contractDto.getProvisioning().getConsumerTransferProvisioning();
 
-        OrganizationConnectorTransferDto providerConnector = getOrgaConnector(contractDto.getDetails().getProviderId(),
-                providerTransferDto.getSelectedConnectorId());
-        OrganizationConnectorTransferDto consumerConnector = getOrgaConnector(contractDto.getDetails().getConsumerId(),
-                consumerTransferDto.getSelectedConnectorId());
+        // look up both connectors concurrently
+        CompletableFuture<OrganizationConnectorTransferDto> providerConnectorRequest =
+                requestOrgaConnector(contractDto.getDetails().getProviderId(), providerTransferDto.getSelectedConnectorId());
+        CompletableFuture<OrganizationConnectorTransferDto> consumerConnectorRequest =
+                requestOrgaConnector(contractDto.getDetails().getConsumerId(), consumerTransferDto.getSelectedConnectorId());
+        OrganizationConnectorTransferDto providerConnector = MessageQueueService.awaitReply(providerConnectorRequest);
+        OrganizationConnectorTransferDto consumerConnector = MessageQueueService.awaitReply(consumerConnectorRequest);
 
-        EdcClient consumerEdcClient = edcClientProvider.getObject(consumerConnector);
+        EdcClient consumerEdcClient = edcClientRegistry.getClient(consumerConnector);
 
-        ContractNegotiation negotiation = getNegotationStatus(negotiationId, contractId, activeRoleOrgaId, authToken);
+        // reuse the already loaded contract and connectors instead of resolving them again
+        ContractNegotiation negotiation = checkNegotiationStatus(negotiationId, consumerConnector, consumerEdcClient);
 
         // consumer side
         // create transfer request
@@ -297,7 +424,7 @@ public class EdcOrchestrationService {
         OrganizationConnectorTransferDto consumerConnector = getOrgaConnector(contractDto.getDetails().getConsumerId(),
                 contractDto.getProvisioning().getConsumerTransferProvisioning().getSelectedConnectorId());
 
-        EdcClient consumerEdcClient = edcClientProvider.getObject(consumerConnector);
+        EdcClient consumerEdcClient = edcClientRegistry.getClient(consumerConnector);
         log.info("Check status of transfer {} on {}", transferId, consumerConnector);
 
         return consumerEdcClient.checkTransferStatus(transferId);
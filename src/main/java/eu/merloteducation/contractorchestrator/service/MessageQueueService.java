@@ -16,68 +16,143 @@
 
 package eu.merloteducation.contractorchestrator.service;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
 import eu.merloteducation.contractorchestrator.config.MessageQueueConfig;
 import eu.merloteducation.contractorchestrator.models.entities.ContractState;
-import eu.merloteducation.contractorchestrator.models.entities.ContractTemplate;
+import eu.merloteducation.contractorchestrator.models.entities.OutboxMessage;
 import eu.merloteducation.contractorchestrator.repositories.ContractTemplateRepository;
+import eu.merloteducation.contractorchestrator.repositories.OutboxMessageRepository;
 import eu.merloteducation.modelslib.api.organization.MerlotParticipantDto;
 import eu.merloteducation.modelslib.api.organization.OrganizationConnectorTransferDto;
 import eu.merloteducation.modelslib.api.serviceoffering.ServiceOfferingDto;
 import eu.merloteducation.modelslib.queue.ConnectorDetailsRequest;
 import eu.merloteducation.modelslib.queue.ContractTemplateUpdated;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.AsyncRabbitTemplate;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 @Service
 @Slf4j
 public class MessageQueueService {
-    private final RabbitTemplate rabbitTemplate;
+    private final AsyncRabbitTemplate asyncRabbitTemplate;
     private final ContractTemplateRepository contractTemplateRepository;
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final Cache<String, MerlotParticipantDto> organizationDetailsCache;
+    private final AsyncCache<String, ServiceOfferingDto> offeringDetailsCache;
+    private final Map<String, Duration> replyTimeouts;
+    private final MeterRegistry meterRegistry;
+    private final int revocationChunkSize;
 
-    public MessageQueueService(@Autowired RabbitTemplate rabbitTemplate,
-                               @Autowired ContractTemplateRepository contractTemplateRepository) {
-        this.rabbitTemplate = rabbitTemplate;
+    public MessageQueueService(@Autowired AsyncRabbitTemplate asyncRabbitTemplate,
+                               @Autowired ContractTemplateRepository contractTemplateRepository,
+                               @Autowired OutboxMessageRepository outboxMessageRepository,
+                               @Autowired Cache<String, MerlotParticipantDto> organizationDetailsCache,
+                               @Autowired AsyncCache<String, ServiceOfferingDto> offeringDetailsCache,
+                               @Value("${messagequeue.reply-timeout.organization:5s}") Duration organizationReplyTimeout,
+                               @Value("${messagequeue.reply-timeout.offering:5s}") Duration offeringReplyTimeout,
+                               @Value("${messagequeue.reply-timeout.organization-connector:5s}")
+                               Duration organizationConnectorReplyTimeout,
+                               @Autowired MeterRegistry meterRegistry,
+                               @Value("${messagequeue.revocation.chunk-size:1000}") int revocationChunkSize) {
+        this.asyncRabbitTemplate = asyncRabbitTemplate;
         this.contractTemplateRepository = contractTemplateRepository;
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.organizationDetailsCache = organizationDetailsCache;
+        this.offeringDetailsCache = offeringDetailsCache;
+        this.replyTimeouts = Map.of(
+                MessageQueueConfig.ORGANIZATION_REQUEST_KEY, organizationReplyTimeout,
+                MessageQueueConfig.OFFERING_REQUEST_KEY, offeringReplyTimeout,
+                MessageQueueConfig.ORGANIZATIONCONNECTOR_REQUEST_KEY, organizationConnectorReplyTimeout
+        );
+        this.meterRegistry = meterRegistry;
+        this.revocationChunkSize = revocationChunkSize;
     }
 
     private void sendContractUpdatedMessage(ContractTemplateUpdated contractTemplateUpdated, String routingKey) {
-        rabbitTemplate.convertAndSend(
-                MessageQueueConfig.ORCHESTRATOR_EXCHANGE,
-                routingKey,
-                contractTemplateUpdated
-        );
+        outboxMessageRepository.save(new OutboxMessage(routingKey, contractTemplateUpdated));
     }
 
     /**
-     * Send a contract creation message to the message bus.
+     * Send a contract creation message to the message bus. The message is stored in the outbox as part of the
+     * current transaction and published by the OutboxRelay once the transaction has been committed.
      *
      * @param contractTemplateUpdated data about the created contract
      */
     public void sendContractCreatedMessage(ContractTemplateUpdated contractTemplateUpdated) {
-        log.info("Sending contract created message for contract with id {} and offering with id {}",
+        log.info("Queueing contract created message for contract with id {} and offering with id {}",
                 contractTemplateUpdated.getContractId(),
                 contractTemplateUpdated.getServiceOfferingId());
+        offeringDetailsCache.synchronous().invalidate(contractTemplateUpdated.getServiceOfferingId());
         sendContractUpdatedMessage(contractTemplateUpdated, MessageQueueConfig.CONTRACT_CREATED_KEY);
     }
 
     /**
-     * Send a contract purge message to the message bus.
+     * Send a contract purge message to the message bus. The message is stored in the outbox as part of the
+     * current transaction and published by the OutboxRelay once the transaction has been committed.
      *
      * @param contractTemplateUpdated data about the purged contract
      */
     public void sendContractPurgedMessage(ContractTemplateUpdated contractTemplateUpdated) {
-        log.info("Sending contract purged message for contract with id {} and offering with id {}",
+        log.info("Queueing contract purged message for contract with id {} and offering with id {}",
                 contractTemplateUpdated.getContractId(),
                 contractTemplateUpdated.getServiceOfferingId());
+        offeringDetailsCache.synchronous().invalidate(contractTemplateUpdated.getServiceOfferingId());
         sendContractUpdatedMessage(contractTemplateUpdated, MessageQueueConfig.CONTRACT_PURGED_KEY);
     }
 
+    /**
+     * Send a request on the bus without blocking the calling thread. If no reply arrives within the timeout
+     * configured for the routing key, the returned future completes with null.
+     *
+     * @param routingKey routing key of the request
+     * @param payload request payload
+     * @param replyType type of the expected reply
+     * @return future reply
+     */
+    private <T> CompletableFuture<T> sendAndReceiveAsync(String routingKey, Object payload,
+                                                         ParameterizedTypeReference<T> replyType) {
+        Duration timeout = replyTimeouts.get(routingKey);
+        return asyncRabbitTemplate.convertSendAndReceiveAsType(
+                MessageQueueConfig.ORCHESTRATOR_EXCHANGE,
+                routingKey,
+                payload,
+                replyType
+        ).completeOnTimeout(null, timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wait for the reply of an asynchronous request, rethrowing the original exception if the request failed.
+     *
+     * @param reply future reply
+     * @return reply
+     */
+    public static <T> T awaitReply(CompletableFuture<T> reply) {
+        try {
+            return reply.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
     /**
      * Request details of an organization over the message bus.
      *
@@ -85,13 +160,19 @@ public class MessageQueueService {
      * @return organization details
      */
     public MerlotParticipantDto remoteRequestOrganizationDetails(String orgaId) {
-        return rabbitTemplate.convertSendAndReceiveAsType(
-                MessageQueueConfig.ORCHESTRATOR_EXCHANGE,
-                MessageQueueConfig.ORGANIZATION_REQUEST_KEY,
-                orgaId,
+        return awaitReply(remoteRequestOrganizationDetailsAsync(orgaId));
+    }
+
+    /**
+     * Request details of an organization over the message bus without blocking.
+     *
+     * @param orgaId organization id
+     * @return future organization details
+     */
+    public CompletableFuture<MerlotParticipantDto> remoteRequestOrganizationDetailsAsync(String orgaId) {
+        return sendAndReceiveAsync(MessageQueueConfig.ORGANIZATION_REQUEST_KEY, orgaId,
                 new ParameterizedTypeReference<>() {
-                }
-        );
+                });
     }
 
     /**
@@ -102,13 +183,22 @@ public class MessageQueueService {
      * @return connector details
      */
     public OrganizationConnectorTransferDto remoteRequestOrganizationConnectorByConnectorId(String orgaId, String connectorId) {
-        return rabbitTemplate.convertSendAndReceiveAsType(
-                MessageQueueConfig.ORCHESTRATOR_EXCHANGE,
-                MessageQueueConfig.ORGANIZATIONCONNECTOR_REQUEST_KEY,
+        return awaitReply(remoteRequestOrganizationConnectorByConnectorIdAsync(orgaId, connectorId));
+    }
+
+    /**
+     * Request details of an organization connector over the message bus without blocking.
+     *
+     * @param orgaId organization id
+     * @param connectorId connector id
+     * @return future connector details
+     */
+    public CompletableFuture<OrganizationConnectorTransferDto> remoteRequestOrganizationConnectorByConnectorIdAsync(
+            String orgaId, String connectorId) {
+        return sendAndReceiveAsync(MessageQueueConfig.ORGANIZATIONCONNECTOR_REQUEST_KEY,
                 new ConnectorDetailsRequest(connectorId, orgaId),
                 new ParameterizedTypeReference<>() {
-                }
-        );
+                });
     }
 
     /**
@@ -118,46 +208,86 @@ public class MessageQueueService {
      * @return offering details
      */
     public ServiceOfferingDto remoteRequestOfferingDetails(String offeringId) {
-        return rabbitTemplate.convertSendAndReceiveAsType(
-                MessageQueueConfig.ORCHESTRATOR_EXCHANGE,
-                MessageQueueConfig.OFFERING_REQUEST_KEY,
-                offeringId,
-                new ParameterizedTypeReference<>() {
-                }
-        );
+        return awaitReply(remoteRequestOfferingDetailsAsync(offeringId));
+    }
+
+    /**
+     * Request details to a service offering on the bus without blocking. Replies are cached, concurrent requests
+     * for an offering that is not cached yet share a single request on the bus.
+     *
+     * @param offeringId id of the offering
+     * @return future offering details
+     */
+    public CompletableFuture<ServiceOfferingDto> remoteRequestOfferingDetailsAsync(String offeringId) {
+        return offeringDetailsCache.get(offeringId, (id, executor) ->
+                sendAndReceiveAsync(MessageQueueConfig.OFFERING_REQUEST_KEY, id,
+                        new ParameterizedTypeReference<ServiceOfferingDto>() {
+                        }));
     }
 
     /**
      * Listen for the event that an organization's membership has been revoked on the message bus.
      * In that case, delete in-draft contracts and revoke consumer-signed contracts associated
-     * with that organization.
+     * with that organization. Only data delivery contracts can be revoked, consumer-signed contracts of other
+     * types are left as they are.
+     * Redeliveries and concurrent deliveries of a revocation are safe, as the contracts are only transitioned if
+     * they are still in the source state.
      *
      * @param orgaId id of the organization whose membership has been revoked
      */
-    @RabbitListener(queues = MessageQueueConfig.ORGANIZATION_REVOKED_QUEUE)
+    @RabbitListener(queues = MessageQueueConfig.ORGANIZATION_REVOKED_QUEUE,
+            containerFactory = MessageQueueConfig.ORGANIZATION_REVOKED_CONTAINER_FACTORY)
     public void organizationRevokedListener(String orgaId) {
         log.info("Organization revoked message: organization ID {}", orgaId);
 
-        List<ContractTemplate> contractsToDelete = contractTemplateRepository.findAllByOrgaIdAndState(orgaId,
-            ContractState.IN_DRAFT);
+        // details of the revoked organization are outdated now
+        organizationDetailsCache.invalidate(orgaId);
 
-        if (!contractsToDelete.isEmpty()) {
-            log.info("Deleting in-draft contracts associated with organization with ID {}", orgaId);
+        int deleted = transitionInChunks(orgaId, ContractState.IN_DRAFT, ContractState.DELETED,
+                limit -> contractTemplateRepository.findIdsByOrgaIdAndState(orgaId, ContractState.IN_DRAFT, limit));
+        log.info("Deleted {} in-draft contracts associated with organization with ID {}", deleted, orgaId);
 
-            contractsToDelete.forEach(contract -> { contract.transitionState(ContractState.DELETED); contractTemplateRepository.save(contract);});
-        } else {
-            log.info("No in-draft contracts associated with organization with ID {} found to delete", orgaId);
-        }
+        int revoked = transitionInChunks(orgaId, ContractState.SIGNED_CONSUMER, ContractState.REVOKED,
+                limit -> contractTemplateRepository.findDataDeliveryIdsByOrgaIdAndState(orgaId,
+                        ContractState.SIGNED_CONSUMER, limit));
+        log.info("Revoked {} consumer-signed contracts associated with organization with ID {}", revoked, orgaId);
+    }
 
-        List<ContractTemplate> contractsToRevoke = contractTemplateRepository.findAllByOrgaIdAndState(orgaId,
-            ContractState.SIGNED_CONSUMER);
+    /**
+     * Transition the contracts of an organization from one state to another with bulk updates, one chunk of ids
+     * at a time, so neither the entities nor the full id list of a large organization are held in memory.
+     *
+     * @param orgaId id of the organization
+     * @param sourceState state the contracts are currently in
+     * @param targetState state to transition the contracts to
+     * @param nextChunk query for the next chunk of contract ids in the source state
+     * @return number of transitioned contracts
+     */
+    private int transitionInChunks(String orgaId, ContractState sourceState, ContractState targetState,
+                                   Function<Limit, List<String>> nextChunk) {
+        if (!sourceState.checkTransitionAllowed(targetState)) {
+            throw new IllegalStateException(String.format("Not allowed to transition from state %s to %s",
+                    sourceState.name(), targetState.name()));
+        }
 
-        if (!contractsToRevoke.isEmpty()) {
-            log.info("Revoking consumer-signed contracts associated with organization with ID {}", orgaId);
+        Counter transitioned = Counter.builder("contracts.organization.revocation")
+                .description("Contracts transitioned because their organization has been revoked")
+                .tag("state", targetState.name())
+                .register(meterRegistry);
 
-            contractsToRevoke.forEach(contract -> { contract.transitionState(ContractState.REVOKED); contractTemplateRepository.save(contract);});
-        } else {
-            log.info("No consumer-signed contracts associated with organization with ID {} found to revoke", orgaId);
+        Limit limit = Limit.of(revocationChunkSize);
+        int total = 0;
+        List<String> ids = nextChunk.apply(limit);
+        while (!ids.isEmpty()) {
+            int updated = contractTemplateRepository.updateStateByIds(ids, sourceState, targetState);
+            transitioned.increment(updated);
+            total += updated;
+            log.debug("Transitioned {} contracts of organization with ID {} to {} so far", total, orgaId, targetState);
+            if (ids.size() < revocationChunkSize) {
+                break;
+            }
+            ids = nextChunk.apply(limit);
         }
+        return total;
     }
 }
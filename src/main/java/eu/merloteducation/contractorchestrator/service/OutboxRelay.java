@@ -0,0 +1,252 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator.service;
+
+import eu.merloteducation.contractorchestrator.config.MessageQueueConfig;
+import eu.merloteducation.contractorchestrator.models.entities.OutboxMessage;
+import eu.merloteducation.contractorchestrator.repositories.OutboxMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the messages stored in the outbox to the orchestrator exchange. Messages are published in batches with
+ * asynchronous publisher confirms, a message is only removed from the outbox once the broker has confirmed it, so
+ * every message is delivered at least once.
+ */
+@Component
+@Slf4j
+public class OutboxRelay {
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final RabbitTemplate rabbitTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxPublishAttempts;
+    private final Duration confirmTimeout;
+    private final Duration nackBackoff;
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final Counter confirmedCounter;
+    private final Counter nackedCounter;
+    private final Counter unconfirmedCounter;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer confirmTimer;
+    private final Timer deliveryTimer;
+
+    private enum ConfirmOutcome { ACK, NACK, NONE }
+
+    private enum BatchOutcome { DRAINED, MORE_PENDING, NACKED, UNCONFIRMED }
+
+    public OutboxRelay(@Autowired OutboxMessageRepository outboxMessageRepository,
+                       @Autowired RabbitTemplate rabbitTemplate,
+                       @Autowired TransactionTemplate transactionTemplate,
+                       @Autowired MeterRegistry meterRegistry,
+                       @Value("${outbox.relay.batch-size:100}") int batchSize,
+                       @Value("${outbox.relay.max-publish-attempts:3}") int maxPublishAttempts,
+                       @Value("${outbox.relay.confirm-timeout:5s}") Duration confirmTimeout,
+                       @Value("${outbox.relay.nack-backoff:PT0.5S}") Duration nackBackoff) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.rabbitTemplate = rabbitTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.maxPublishAttempts = maxPublishAttempts;
+        this.confirmTimeout = confirmTimeout;
+        this.nackBackoff = nackBackoff;
+
+        TimeGauge.builder("outbox.lag", lagMillis, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("Age of the oldest message waiting in the outbox")
+                .register(meterRegistry);
+        this.confirmedCounter = relayedCounter(meterRegistry, "confirmed");
+        this.nackedCounter = relayedCounter(meterRegistry, "nacked");
+        this.unconfirmedCounter = relayedCounter(meterRegistry, "unconfirmed");
+        this.batchSizeSummary = DistributionSummary.builder("outbox.batch.size")
+                .description("Messages published per outbox batch")
+                .register(meterRegistry);
+        this.confirmTimer = Timer.builder("outbox.confirm.latency")
+                .description("Time from publishing a message until the broker confirmed it")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.deliveryTimer = Timer.builder("outbox.delivery")
+                .description("Time from storing a message in the outbox until the broker confirmed it")
+                .register(meterRegistry);
+    }
+
+    private static Counter relayedCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("outbox.relayed")
+                .description("Outbox messages published to the message bus")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publish the pending outbox messages. Messages stored within the relay interval are coalesced into batches of
+     * up to the configured batch size. Full batches are drained one after another without waiting for the next
+     * interval, as long as the broker confirms them. Messages the broker did not acknowledge are published again
+     * in a new transaction after an exponential backoff, up to the configured number of attempts, so the locks on
+     * the pending messages are only held while waiting for the confirms of a single attempt. If the broker does
+     * not confirm messages at all, the relay stops until the next interval.
+     */
+    @Scheduled(fixedDelayString = "${outbox.relay.interval:PT0.5S}")
+    public void relay() {
+        int nackedAttempts = 0;
+        BatchOutcome outcome;
+        do {
+            outcome = transactionTemplate.execute(status -> relayBatch());
+            nackedAttempts = outcome == BatchOutcome.NACKED ? nackedAttempts + 1 : 0;
+        } while (outcome == BatchOutcome.MORE_PENDING
+                || (outcome == BatchOutcome.NACKED && nackedAttempts < maxPublishAttempts
+                && backOff(nackedAttempts)));
+    }
+
+    /**
+     * Wait before publishing nacked messages again, doubling the configured backoff with every attempt.
+     *
+     * @param attempt number of attempts that have been nacked so far
+     * @return false if the relay has been interrupted while waiting
+     */
+    private boolean backOff(int attempt) {
+        try {
+            Thread.sleep(nackBackoff.multipliedBy(1L << (attempt - 1)).toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Publish the next batch of outbox messages. All messages of the batch are sent before waiting for the
+     * confirms, confirmed messages are removed from the outbox, all others stay in it for the next attempt. A batch
+     * contains at most one message per contract, so the next message of a contract is only sent once the previous
+     * one has been confirmed and the messages of a contract are published in order.
+     *
+     * @return outcome of the batch, whether more messages may be pending or some were not acknowledged or not
+     *     confirmed at all
+     */
+    private BatchOutcome relayBatch() {
+        List<OutboxMessage> pending = outboxMessageRepository.findAllByOrderByCreatedAtAscIdAsc(Limit.of(batchSize));
+        lagMillis.set(pending.isEmpty() ? 0
+                : Duration.between(pending.get(0).getCreatedAt(), OffsetDateTime.now()).toMillis());
+        if (pending.isEmpty()) {
+            return BatchOutcome.DRAINED;
+        }
+
+        Set<String> batchContracts = new HashSet<>();
+        List<OutboxMessage> batch = pending.stream()
+                .filter(message -> batchContracts.add(message.getContractId()))
+                .toList();
+        batchSizeSummary.record(batch.size());
+
+        List<OutboxMessage> confirmed = new ArrayList<>();
+        List<OutboxMessage> nacked = publish(batch, confirmed);
+        outboxMessageRepository.deleteAllInBatch(confirmed);
+
+        confirmedCounter.increment(confirmed.size());
+        log.debug("Relayed {} of {} pending outbox messages", confirmed.size(), pending.size());
+        int unconfirmed = batch.size() - confirmed.size() - nacked.size();
+        if (unconfirmed > 0) {
+            log.warn("{} outbox messages were not confirmed, retrying with the next run", unconfirmed);
+            return BatchOutcome.UNCONFIRMED;
+        }
+        if (!nacked.isEmpty()) {
+            return BatchOutcome.NACKED;
+        }
+        return pending.size() == batchSize && confirmed.size() == batch.size()
+                ? BatchOutcome.MORE_PENDING : BatchOutcome.DRAINED;
+    }
+
+    /**
+     * Publish the given messages and wait for their confirms.
+     *
+     * @param messages messages to publish
+     * @param confirmed list to add the confirmed messages to
+     * @return messages that were negatively acknowledged by the broker and can be published again
+     */
+    private List<OutboxMessage> publish(List<OutboxMessage> messages, List<OutboxMessage> confirmed) {
+        Map<OutboxMessage, CorrelationData> sent = new LinkedHashMap<>();
+        for (OutboxMessage message : messages) {
+            CorrelationData correlationData = new CorrelationData(message.getId().toString());
+            long publishedAt = System.nanoTime();
+            correlationData.getFuture().thenAccept(confirm ->
+                    confirmTimer.record(System.nanoTime() - publishedAt, TimeUnit.NANOSECONDS));
+            try {
+                rabbitTemplate.convertAndSend(MessageQueueConfig.ORCHESTRATOR_EXCHANGE, message.getRoutingKey(),
+                        message.toContractTemplateUpdated(), correlationData);
+            } catch (AmqpException e) {
+                log.warn("Failed to publish outbox message {}, retrying with the next run", message.getId(), e);
+                break;
+            }
+            sent.put(message, correlationData);
+        }
+
+        long deadline = System.nanoTime() + confirmTimeout.toNanos();
+        List<OutboxMessage> nacked = new ArrayList<>();
+        sent.forEach((message, correlationData) -> {
+            switch (awaitConfirm(message, correlationData, deadline)) {
+                case ACK -> {
+                    confirmed.add(message);
+                    deliveryTimer.record(Duration.between(message.getCreatedAt(), OffsetDateTime.now()));
+                }
+                case NACK -> {
+                    nacked.add(message);
+                    nackedCounter.increment();
+                }
+                case NONE -> unconfirmedCounter.increment();
+            }
+        });
+        return nacked;
+    }
+
+    private ConfirmOutcome awaitConfirm(OutboxMessage message, CorrelationData correlationData, long deadline) {
+        try {
+            CorrelationData.Confirm confirm = correlationData.getFuture()
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (!confirm.isAck()) {
+                log.warn("Outbox message {} was not acknowledged by the broker: {}", message.getId(),
+                        confirm.getReason());
+                return ConfirmOutcome.NACK;
+            }
+            return ConfirmOutcome.ACK;
+        } catch (TimeoutException | ExecutionException e) {
+            log.warn("No confirm for outbox message {}, retrying with the next run", message.getId());
+            return ConfirmOutcome.NONE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ConfirmOutcome.NONE;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator;
+
+import eu.merloteducation.contractorchestrator.migration.AttachmentsMigration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttachmentsMigrationTest {
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void beforeEach() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("create table contract_template (id varchar(255) not null primary key, " +
+                "attachments varbinary(4096))");
+    }
+
+    @AfterEach
+    void afterEach() {
+        database.shutdown();
+    }
+
+    private void storeLegacyAttachments(String contractId, Serializable attachments) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(attachments);
+        }
+        jdbcTemplate.update("insert into contract_template (id, attachments) values (?, ?)", contractId,
+                bytes.toByteArray());
+    }
+
+    private Set<String> getMigratedAttachments(String contractId) {
+        return new HashSet<>(jdbcTemplate.queryForList("select attachment from contract_template_attachments " +
+                "where contract_template_id = ?", String.class, contractId));
+    }
+
+    private boolean legacyColumnExists() {
+        return jdbcTemplate.queryForObject("select count(*) from information_schema.columns " +
+                "where lower(table_name) = 'contract_template' and lower(column_name) = 'attachments'",
+                Integer.class) > 0;
+    }
+
+    @Test
+    void migrateSerializedAttachments() throws IOException {
+        Set<String> attachments = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            attachments.add("attachment" + i + ".pdf");
+        }
+        storeLegacyAttachments("Contract:many", new HashSet<>(attachments));
+        // more contracts than fit into one batch
+        for (int i = 0; i < 5; i++) {
+            storeLegacyAttachments("Contract:" + i, new HashSet<>(Set.of("contract" + i + ".pdf")));
+        }
+
+        new AttachmentsMigration(database, 2).afterPropertiesSet();
+
+        assertEquals(attachments, getMigratedAttachments("Contract:many"));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Set.of("contract" + i + ".pdf"), getMigratedAttachments("Contract:" + i));
+        }
+        assertFalse(legacyColumnExists());
+    }
+
+    @Test
+    void migrateContinuesInterruptedMigration() throws IOException {
+        storeLegacyAttachments("Contract:moved", new HashSet<>(Set.of("moved.pdf")));
+        storeLegacyAttachments("Contract:pending", new HashSet<>(Set.of("pending.pdf")));
+        // state after a first run that moved one batch and stopped
+        jdbcTemplate.execute("create table contract_template_attachments (contract_template_id varchar(255) " +
+                "not null, attachment varchar(255) not null, primary key (contract_template_id, attachment))");
+        jdbcTemplate.update("insert into contract_template_attachments values ('Contract:moved', 'moved.pdf')");
+        jdbcTemplate.update("update contract_template set attachments = null where id = 'Contract:moved'");
+
+        new AttachmentsMigration(database, 1).afterPropertiesSet();
+
+        assertEquals(Set.of("moved.pdf"), getMigratedAttachments("Contract:moved"));
+        assertEquals(Set.of("pending.pdf"), getMigratedAttachments("Contract:pending"));
+        assertFalse(legacyColumnExists());
+    }
+
+    @Test
+    void migrateTwiceIsNoOp() throws IOException {
+        storeLegacyAttachments("Contract:saas", new HashSet<>(Set.of("attachment.pdf")));
+        new AttachmentsMigration(database, 2).afterPropertiesSet();
+
+        assertDoesNotThrow(() -> new AttachmentsMigration(database, 2).afterPropertiesSet());
+        assertEquals(Set.of("attachment.pdf"), getMigratedAttachments("Contract:saas"));
+    }
+
+    @Test
+    void migrateRejectsUnexpectedClasses() throws IOException {
+        HashSet<Object> attachments = new HashSet<>();
+        attachments.add(new Date());
+        storeLegacyAttachments("Contract:date", attachments);
+
+        AttachmentsMigration migration = new AttachmentsMigration(database, 2);
+        assertThrows(IllegalStateException.class, migration::afterPropertiesSet);
+        assertTrue(getMigratedAttachments("Contract:date").isEmpty());
+        assertTrue(legacyColumnExists());
+    }
+}
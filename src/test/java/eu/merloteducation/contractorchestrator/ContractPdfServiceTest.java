@@ -0,0 +1,187 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator;
+
+import eu.merloteducation.contractorchestrator.models.entities.ContractPdfJob;
+import eu.merloteducation.contractorchestrator.models.entities.ContractPdfStatus;
+import eu.merloteducation.contractorchestrator.models.entities.saas.SaasContractTemplate;
+import eu.merloteducation.contractorchestrator.repositories.ContractPdfJobRepository;
+import eu.merloteducation.contractorchestrator.repositories.ContractTemplateRepository;
+import eu.merloteducation.contractorchestrator.service.ContractPdfService;
+import eu.merloteducation.contractorchestrator.service.ContractStorageService;
+import eu.merloteducation.contractorchestrator.service.PdfServiceClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(properties = {"contract-pdf.workers=1", "contract-pdf.retry.max-attempts=3",
+        "contract-pdf.claim-timeout=5m"})
+class ContractPdfServiceTest {
+
+    @Autowired
+    ContractPdfService contractPdfService;
+
+    @Autowired
+    ContractPdfJobRepository contractPdfJobRepository;
+
+    @Autowired
+    ContractTemplateRepository contractTemplateRepository;
+
+    @MockBean
+    ContractStorageService contractStorageService;
+
+    @MockBean
+    PdfServiceClient pdfServiceClient;
+
+    private String contractId;
+
+    @BeforeEach
+    void beforeEach() {
+        contractPdfJobRepository.deleteAll();
+        contractId = createReleasedContract();
+    }
+
+    private String createReleasedContract() {
+        SaasContractTemplate contract = new SaasContractTemplate();
+        contract.setPdfStatus(ContractPdfStatus.PENDING);
+        String id = contractTemplateRepository.save(contract).getId();
+        contractPdfJobRepository.save(new ContractPdfJob(id));
+        return id;
+    }
+
+    private void awaitPdfStatus(String id, ContractPdfStatus pdfStatus) throws InterruptedException {
+        for (int i = 0; i < 50 && contractTemplateRepository.findPdfStatusById(id).orElse(null) != pdfStatus; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(pdfStatus, contractTemplateRepository.findPdfStatusById(id).orElse(null));
+    }
+
+    @Test
+    void generateContractPdfStoresPdf() throws Exception {
+        byte[] pdf = new byte[]{0x01, 0x02, 0x03, 0x04};
+        when(pdfServiceClient.getPdfContract(any())).thenReturn(pdf);
+
+        contractPdfService.generateContractPdf(contractId);
+
+        verify(contractStorageService).saveContractPdf(contractId, pdf);
+        assertFalse(contractPdfJobRepository.existsById(contractId));
+        assertEquals(ContractPdfStatus.READY, contractTemplateRepository.findPdfStatusById(contractId).orElse(null));
+    }
+
+    @Test
+    void generateContractPdfRetriedWithBackoff() {
+        when(pdfServiceClient.getPdfContract(any())).thenThrow(new IllegalStateException("pdf service down"));
+
+        contractPdfService.generateContractPdf(contractId);
+
+        ContractPdfJob job = contractPdfJobRepository.findById(contractId).orElseThrow();
+        assertEquals(1, job.getAttempts());
+        assertTrue(job.getNextAttemptAt().isAfter(OffsetDateTime.now()));
+        assertEquals(ContractPdfStatus.PENDING, contractTemplateRepository.findPdfStatusById(contractId).orElse(null));
+    }
+
+    @Test
+    void generateContractPdfFailsAfterLastAttempt() {
+        when(pdfServiceClient.getPdfContract(any())).thenThrow(new IllegalStateException("pdf service down"));
+        ContractPdfJob job = contractPdfJobRepository.findById(contractId).orElseThrow();
+        job.setAttempts(2);
+        contractPdfJobRepository.save(job);
+
+        contractPdfService.generateContractPdf(contractId);
+
+        assertFalse(contractPdfJobRepository.existsById(contractId));
+        assertEquals(ContractPdfStatus.FAILED, contractTemplateRepository.findPdfStatusById(contractId).orElse(null));
+    }
+
+    @Test
+    void processDueJobsGeneratesPdf() throws Exception {
+        byte[] pdf = new byte[]{0x01, 0x02, 0x03, 0x04};
+        when(pdfServiceClient.getPdfContract(any())).thenReturn(pdf);
+
+        contractPdfService.processDueJobs();
+
+        awaitPdfStatus(contractId, ContractPdfStatus.READY);
+        verify(contractStorageService).saveContractPdf(contractId, pdf);
+        assertFalse(contractPdfJobRepository.existsById(contractId));
+    }
+
+    @Test
+    void processDueJobsClaimsOnlyJobsForIdleWorkers() throws Exception {
+        String otherContractId = createReleasedContract();
+        CountDownLatch generationStarted = new CountDownLatch(1);
+        CountDownLatch pdfServiceResponds = new CountDownLatch(1);
+        when(pdfServiceClient.getPdfContract(any())).thenAnswer(invocation -> {
+            generationStarted.countDown();
+            pdfServiceResponds.await(10, TimeUnit.SECONDS);
+            return new byte[]{0x01};
+        });
+
+        List<ContractPdfJob> claimedJobs;
+        try {
+            contractPdfService.processDueJobs();
+            assertTrue(generationStarted.await(5, TimeUnit.SECONDS));
+            // the only worker is busy, so no further job is claimed
+            contractPdfService.processDueJobs();
+
+            verify(pdfServiceClient, times(1)).getPdfContract(any());
+            // the claimed job is not due again until the claim has timed out, the other one is still due
+            OffsetDateTime now = OffsetDateTime.now();
+            List<ContractPdfJob> jobs = contractPdfJobRepository.findAll();
+            claimedJobs = jobs.stream().filter(job -> job.getNextAttemptAt().isAfter(now.plusMinutes(4))).toList();
+            assertEquals(1, claimedJobs.size());
+            assertEquals(1, jobs.stream().filter(job -> job.getNextAttemptAt().isBefore(now)).count());
+        } finally {
+            pdfServiceResponds.countDown();
+        }
+
+        String claimedContractId = claimedJobs.get(0).getContractId();
+        awaitPdfStatus(claimedContractId, ContractPdfStatus.READY);
+        assertTrue(contractPdfJobRepository.existsById(
+                claimedContractId.equals(contractId) ? otherContractId : contractId));
+    }
+
+    @Test
+    void processDueJobsSkipsClaimedJobUntilClaimTimedOut() throws Exception {
+        when(pdfServiceClient.getPdfContract(any())).thenReturn(new byte[]{0x01});
+        // claimed by an instance that stopped before it finished the job
+        ContractPdfJob job = contractPdfJobRepository.findById(contractId).orElseThrow();
+        job.setNextAttemptAt(OffsetDateTime.now().plusMinutes(5));
+        contractPdfJobRepository.save(job);
+
+        contractPdfService.processDueJobs();
+
+        verify(pdfServiceClient, after(500).never()).getPdfContract(any());
+
+        job.setNextAttemptAt(OffsetDateTime.now().minusSeconds(1));
+        contractPdfJobRepository.save(job);
+        contractPdfService.processDueJobs();
+
+        awaitPdfStatus(contractId, ContractPdfStatus.READY);
+    }
+}
@@ -20,6 +20,10 @@ import com.danubetech.verifiablecredentials.VerifiableCredential;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import eu.merloteducation.contractorchestrator.models.dto.ContractBasicDtoCursorPage;
+import eu.merloteducation.contractorchestrator.models.dto.ContractVersionDto;
+import eu.merloteducation.contractorchestrator.models.dto.VersionedContractDto;
 import eu.merloteducation.contractorchestrator.models.entities.*;
 import eu.merloteducation.contractorchestrator.models.entities.cooperation.CooperationContractTemplate;
 import eu.merloteducation.contractorchestrator.models.entities.datadelivery.DataDeliveryContractTemplate;
@@ -30,6 +34,7 @@ import eu.merloteducation.contractorchestrator.models.entities.saas.SaasContract
 import eu.merloteducation.contractorchestrator.models.mappers.ContractDtoToPdfMapper;
 import eu.merloteducation.contractorchestrator.models.mappers.ContractFromDtoMapper;
 import eu.merloteducation.contractorchestrator.models.mappers.ContractToDtoMapper;
+import eu.merloteducation.contractorchestrator.repositories.ContractPdfJobRepository;
 import eu.merloteducation.contractorchestrator.repositories.ContractTemplateRepository;
 import eu.merloteducation.contractorchestrator.service.*;
 import eu.merloteducation.gxfscataloglibrary.models.credentials.CastableCredentialSubject;
@@ -55,6 +60,7 @@ import eu.merloteducation.gxfscataloglibrary.models.selfdescriptions.merlot.serv
 import eu.merloteducation.modelslib.api.contract.ContractBasicDto;
 import eu.merloteducation.modelslib.api.contract.ContractCreateRequest;
 import eu.merloteducation.modelslib.api.contract.ContractDto;
+import eu.merloteducation.modelslib.api.contract.ContractPdfDto;
 import eu.merloteducation.modelslib.api.contract.cooperation.CooperationContractDto;
 import eu.merloteducation.modelslib.api.contract.datadelivery.DataDeliveryContractDto;
 import eu.merloteducation.modelslib.api.contract.datadelivery.ionoss3extension.IonosS3ConsumerTransferProvisioningDto;
@@ -69,6 +75,10 @@ import eu.merloteducation.s3library.service.StorageClient;
 import eu.merloteducation.s3library.service.StorageClientException;
 import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metamodel.MappingMetamodel;
+import org.hibernate.stat.Statistics;
 import org.json.JSONException;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -79,8 +89,10 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
@@ -91,7 +103,11 @@ import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 
 import static eu.merloteducation.contractorchestrator.SelfDescriptionDemoData.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -129,12 +145,12 @@ class ContractStorageServiceTest {
     @Mock
     private StorageClient storageClient;
 
-    @Mock
-    private PdfServiceClient pdfServiceClient;
-
     @Autowired
     private ContractTemplateRepository contractTemplateRepository;
 
+    @Autowired
+    private ContractPdfJobRepository contractPdfJobRepository;
+
     @Mock
     private MessageQueueService messageQueueService;
 
@@ -146,6 +162,10 @@ class ContractStorageServiceTest {
     private DataDeliveryContractTemplate dataDeliveryContract;
     private CooperationContractTemplate coopContract;
 
+    @Autowired
+    @Qualifier("enrichmentExecutor")
+    private Executor enrichmentExecutor;
+
     @Autowired
     private PlatformTransactionManager transactionManager;
     private TransactionTemplate transactionTemplate;
@@ -282,21 +302,29 @@ class ContractStorageServiceTest {
                 .thenReturn(offering4321);
         lenient().when(messageQueueService.remoteRequestOfferingDetails(eq("urn:uuid:4321")))
                 .thenReturn(offering4321);
+        lenient().when(messageQueueService.remoteRequestOfferingDetailsAsync(eq("urn:uuid:4321")))
+                .thenReturn(CompletableFuture.completedFuture(offering4321));
 
         lenient().when(serviceOfferingOrchestratorClient.getOfferingDetails(eq(saasContract.getOfferingId()), any()))
                 .thenReturn(saasOffering);
         lenient().when(messageQueueService.remoteRequestOfferingDetails(eq(saasContract.getOfferingId())))
                 .thenReturn(saasOffering);
+        lenient().when(messageQueueService.remoteRequestOfferingDetailsAsync(eq(saasContract.getOfferingId())))
+                .thenReturn(CompletableFuture.completedFuture(saasOffering));
 
         lenient().when(serviceOfferingOrchestratorClient.getOfferingDetails(eq(dataDeliveryContract.getOfferingId()), any()))
                 .thenReturn(dataDeliveryOffering);
         lenient().when(messageQueueService.remoteRequestOfferingDetails(eq(dataDeliveryContract.getOfferingId())))
                 .thenReturn(dataDeliveryOffering);
+        lenient().when(messageQueueService.remoteRequestOfferingDetailsAsync(eq(dataDeliveryContract.getOfferingId())))
+                .thenReturn(CompletableFuture.completedFuture(dataDeliveryOffering));
 
         lenient().when(serviceOfferingOrchestratorClient.getOfferingDetails(eq(coopContract.getOfferingId()), any()))
                 .thenReturn(coopOffering);
         lenient().when(messageQueueService.remoteRequestOfferingDetails(eq(coopContract.getOfferingId())))
                 .thenReturn(coopOffering);
+        lenient().when(messageQueueService.remoteRequestOfferingDetailsAsync(eq(coopContract.getOfferingId())))
+                .thenReturn(CompletableFuture.completedFuture(coopOffering));
 
         MerlotParticipantDto organizationOrchestratorResponse = createOrganizationsOrchestratorResponse(getParticipantId(40));
         lenient().when(organizationOrchestratorClient.getOrganizationDetails(any(), any()))
@@ -304,17 +332,24 @@ class ContractStorageServiceTest {
 
         lenient().when(storageClient.getItem(any(), any())).thenReturn(new byte[]{0x01, 0x02, 0x03, 0x04});
 
-        contractStorageService = new ContractStorageService(
+        contractStorageService = createContractStorageService(Duration.ofSeconds(10));
+    }
+
+    private ContractStorageService createContractStorageService(Duration enrichmentTimeout) {
+        return new ContractStorageService(
                 entityManager,
                 serviceOfferingOrchestratorClient,
                 organizationOrchestratorClient,
-                pdfServiceClient,
                 messageQueueService,
                 contractTemplateRepository,
+                contractPdfJobRepository,
                 contractToDtoMapper,
                 contractFromDtoMapper,
                 contractDtoToPdfMapper,
-                storageClient
+                storageClient,
+                enrichmentExecutor,
+                Caffeine.newBuilder().build(),
+                enrichmentTimeout
         );
     }
 
@@ -326,6 +361,104 @@ class ContractStorageServiceTest {
         assertFalse(contracts.isEmpty());
     }
 
+    @Test
+    void getOrganizationContractsResolvesEachReferenceOnce() {
+        Page<ContractBasicDto> contracts = contractStorageService.getOrganizationContracts(getParticipantId(10),
+                PageRequest.of(0, 9, Sort.by("creationDate").descending()), null , "authToken");
+
+        assertFalse(contracts.isEmpty());
+        verify(organizationOrchestratorClient, times(1)).getOrganizationDetails(eq(getParticipantId(10)), any());
+        verify(organizationOrchestratorClient, times(1)).getOrganizationDetails(eq(getParticipantId(20)), any());
+        verify(messageQueueService, times(1)).remoteRequestOfferingDetailsAsync(saasContract.getOfferingId());
+    }
+
+    @Test
+    void getOrganizationContractsReusesCachedOrganizationDetails() {
+        contractStorageService.getOrganizationContracts(getParticipantId(10),
+                PageRequest.of(0, 9, Sort.by("creationDate").descending()), null , "authToken");
+        contractStorageService.getOrganizationContracts(getParticipantId(10),
+                PageRequest.of(0, 9, Sort.by("creationDate").descending()), null , "authToken");
+
+        verify(organizationOrchestratorClient, times(1)).getOrganizationDetails(eq(getParticipantId(10)), any());
+        verify(organizationOrchestratorClient, times(1)).getOrganizationDetails(eq(getParticipantId(20)), any());
+    }
+
+    private Statistics resetStatistics() {
+        entityManager.flush();
+        entityManager.clear();
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+    @Test
+    void getOrganizationContractsStatementCount() {
+        Statistics statistics = resetStatistics();
+
+        Page<ContractBasicDto> contracts = contractStorageService.getOrganizationContracts(getParticipantId(10),
+                PageRequest.of(0, 1, Sort.by("creationDate").descending()), null , "authToken");
+
+        assertEquals(1, contracts.getContent().size());
+        // one select for the page and one for the count, no secondary selects per contract
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityFetchCount());
+        assertEquals(0, statistics.getCollectionFetchCount());
+    }
+
+    @Test
+    void scrollOrganizationContractsStatementCount() {
+        Statistics statistics = resetStatistics();
+
+        ContractBasicDtoCursorPage slice = contractStorageService.getOrganizationContracts(getParticipantId(10),
+                9, null, null, "authToken");
+
+        assertFalse(slice.getContent().isEmpty());
+        // one select for the provider side and one for the consumer side
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityFetchCount());
+    }
+
+    @Test
+    void getContractDetailsStatementCount() {
+        Statistics statistics = resetStatistics();
+
+        ContractDto contract = contractStorageService.getContractDetails(dataDeliveryContract.getId(), "authToken");
+
+        assertEquals(dataDeliveryContract.getId(), contract.getDetails().getId());
+        // the aggregate is loaded in one go, only the transfer provisionings of the provisioning may follow
+        assertTrue(statistics.getPrepareStatementCount() <= 3);
+        assertEquals(0, statistics.getCollectionFetchCount());
+    }
+
+    @Test
+    void addTermsAndConditionsOnlyInsertsNewRow() {
+        Statistics statistics = resetStatistics();
+        ContractTemplate contract = contractTemplateRepository.findById(saasContract.getId()).orElseThrow();
+        ContractTnc tnc = new ContractTnc();
+        tnc.setContent("http://example.com/additional");
+        tnc.setHash("hash5678");
+
+        contract.getTermsAndConditions().add(tnc);
+        entityManager.flush();
+
+        assertEquals(0, statistics.getCollectionRecreateCount());
+        assertEquals(1, statistics.getCollectionUpdateCount());
+    }
+
+    @Test
+    void concreteContractEntitiesOnlyUpdateChangedColumns() {
+        MappingMetamodel metamodel = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactoryImplementor.class).getMappingMetamodel();
+
+        // the update statements are generated per concrete entity, so each of them needs to be dynamic
+        for (Class<?> entity : List.of(SaasContractTemplate.class, DataDeliveryContractTemplate.class,
+                CooperationContractTemplate.class, DefaultProvisioning.class, DataDeliveryProvisioning.class,
+                IonosS3ProviderTransferProvisioning.class, IonosS3ConsumerTransferProvisioning.class)) {
+            assertTrue(metamodel.getEntityDescriptor(entity).getEntityMetamodel().isDynamicUpdate(),
+                    entity.getSimpleName());
+        }
+    }
+
     @Test
     void getOrganizationContractsNonExisting() {
         Page<ContractBasicDto> contracts = contractStorageService.getOrganizationContracts(getParticipantId(99),
@@ -334,6 +467,67 @@ class ContractStorageServiceTest {
         assertTrue(contracts.isEmpty());
     }
 
+    @Test
+    void scrollOrganizationContractsMatchesPagedResult() {
+        Page<ContractBasicDto> page = contractStorageService.getOrganizationContracts(getParticipantId(10),
+                PageRequest.of(0, 15, Sort.by("creationDate").descending()), null, "authToken");
+
+        List<String> scrolledIds = new ArrayList<>();
+        String cursor = null;
+        do {
+            ContractBasicDtoCursorPage slice = contractStorageService.getOrganizationContracts(getParticipantId(10),
+                    1, cursor, null, "authToken");
+            slice.getContent().forEach(contract -> scrolledIds.add(contract.getId()));
+            cursor = slice.getNextCursor();
+        } while (cursor != null);
+
+        assertFalse(scrolledIds.isEmpty());
+        assertEquals(page.getTotalElements(), scrolledIds.size());
+        assertEquals(scrolledIds.size(), new HashSet<>(scrolledIds).size());
+    }
+
+    @Test
+    void scrollOrganizationContractsLaterPageOfLargeOrganization() {
+        String orgaId = getParticipantId(30);
+        for (int i = 0; i < 40; i++) {
+            // the organization alternates between the provider and the consumer side
+            SaasContractTemplate contract = new SaasContractTemplate();
+            contract.setProviderId(i % 2 == 0 ? orgaId : getParticipantId(20));
+            contract.setConsumerId(i % 2 == 0 ? getParticipantId(20) : orgaId);
+            contract.setOfferingId(saasContract.getOfferingId());
+            contractTemplateRepository.save(contract);
+        }
+        resetStatistics();
+        Page<ContractBasicDto> page = contractStorageService.getOrganizationContracts(orgaId,
+                PageRequest.of(3, 5, Sort.by("creationDate").descending().and(Sort.by("id").descending())), null,
+                "authToken");
+        String cursor = null;
+        for (int i = 0; i < 3; i++) {
+            cursor = contractStorageService.getOrganizationContracts(orgaId, 5, cursor, null, "authToken")
+                    .getNextCursor();
+        }
+
+        Statistics statistics = resetStatistics();
+        ContractBasicDtoCursorPage slice = contractStorageService.getOrganizationContracts(orgaId, 5, cursor, null,
+                "authToken");
+
+        assertEquals(page.getContent().stream().map(ContractBasicDto::getId).toList(),
+                slice.getContent().stream().map(ContractBasicDto::getId).toList());
+        assertNotNull(slice.getNextCursor());
+        // each side reads at most the requested size and the look-ahead contract, independent of the position
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertTrue(statistics.getEntityLoadCount() <= 2 * 6);
+    }
+
+    @Test
+    void scrollOrganizationContractsInvalidCursor() {
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () ->
+                contractStorageService.getOrganizationContracts(getParticipantId(10), 9, "%%garbage%%", null,
+                        "authToken"));
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, ex.getStatusCode());
+    }
+
     @Test
     void getOrganizationContractsInvalidOrgaId() {
         ResponseStatusException ex = assertThrows(ResponseStatusException.class, () ->
@@ -353,6 +547,41 @@ class ContractStorageServiceTest {
         assertFalse(contracts.isEmpty());
     }
 
+    @Test
+    void getOrganizationContractsFilteredIncludesProviderAndConsumerSide() {
+        String orgaId = getParticipantId(31);
+        SaasContractTemplate provided = new SaasContractTemplate();
+        provided.setProviderId(orgaId);
+        provided.setConsumerId(getParticipantId(20));
+        provided.setOfferingId(saasContract.getOfferingId());
+        contractTemplateRepository.save(provided);
+        DataDeliveryContractTemplate consumed = new DataDeliveryContractTemplate();
+        consumed.setProviderId(getParticipantId(20));
+        consumed.setConsumerId(orgaId);
+        consumed.setOfferingId(dataDeliveryContract.getOfferingId());
+        contractTemplateRepository.save(consumed);
+        resetStatistics();
+
+        Page<ContractBasicDto> contracts = contractStorageService.getOrganizationContracts(orgaId,
+                PageRequest.of(0, 9, Sort.by("creationDate").descending()), ContractState.IN_DRAFT, "authToken");
+        ContractBasicDtoCursorPage slice = contractStorageService.getOrganizationContracts(orgaId, 9, null,
+                ContractState.IN_DRAFT, "authToken");
+
+        Set<String> expectedIds = Set.of(provided.getId(), consumed.getId());
+        assertEquals(2, contracts.getTotalElements());
+        assertEquals(expectedIds, contracts.getContent().stream().map(ContractBasicDto::getId)
+                .collect(Collectors.toSet()));
+        assertEquals(expectedIds, slice.getContent().stream().map(ContractBasicDto::getId)
+                .collect(Collectors.toSet()));
+        assertEquals(expectedIds, new HashSet<>(contractTemplateRepository.findIdsByOrgaIdAndState(orgaId,
+                ContractState.IN_DRAFT, Limit.of(9))));
+        assertEquals(List.of(consumed.getId()), contractTemplateRepository.findDataDeliveryIdsByOrgaIdAndState(orgaId,
+                ContractState.IN_DRAFT, Limit.of(9)));
+        assertTrue(contractStorageService.getOrganizationContracts(orgaId,
+                PageRequest.of(0, 9, Sort.by("creationDate").descending()), ContractState.RELEASED, "authToken")
+                .isEmpty());
+    }
+
     @Test
     void getContractByIdExistent() {
         Set<String> representedOrgaIds = new HashSet<>();
@@ -362,6 +591,45 @@ class ContractStorageServiceTest {
         assertEquals(saasContract.getConsumerId(), contract.getDetails().getConsumerId());
     }
 
+    @Test
+    void getVersionedContractDetailsCarriesVersionOfLoadedContract() {
+        VersionedContractDto contract = contractStorageService.getVersionedContractDetails(saasContract.getId(),
+                "authToken");
+
+        assertEquals(saasContract.getId(), contract.getContract().getDetails().getId());
+        assertEquals(contractTemplateRepository.findVersionById(saasContract.getId()).orElseThrow(),
+                contract.getVersion());
+    }
+
+    @Test
+    void getContractByIdDetailsLookupTimeout() {
+        ContractStorageService impatientContractStorageService = createContractStorageService(Duration.ofMillis(50));
+        when(messageQueueService.remoteRequestOfferingDetailsAsync(eq(saasContract.getOfferingId())))
+                .thenReturn(new CompletableFuture<>());
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> impatientContractStorageService.getContractDetails(saasContract.getId(), "authToken"));
+
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, ex.getStatusCode());
+    }
+
+    @Test
+    void getOrganizationContractsLookupTimeout() {
+        ContractStorageService impatientContractStorageService = createContractStorageService(Duration.ofMillis(50));
+        when(messageQueueService.remoteRequestOfferingDetailsAsync(eq(saasContract.getOfferingId())))
+                .thenReturn(new CompletableFuture<>());
+
+        ResponseStatusException pageEx = assertThrows(ResponseStatusException.class,
+                () -> impatientContractStorageService.getOrganizationContracts(getParticipantId(10),
+                        PageRequest.of(0, 9, Sort.by("creationDate").descending()), null, "authToken"));
+        ResponseStatusException sliceEx = assertThrows(ResponseStatusException.class,
+                () -> impatientContractStorageService.getOrganizationContracts(getParticipantId(10), 9, null,
+                        null, "authToken"));
+
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, pageEx.getStatusCode());
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, sliceEx.getStatusCode());
+    }
+
     @Test
     void getContractByIdNonExistent() {
         Set<String> representedOrgaIds = new HashSet<>();
@@ -453,6 +721,81 @@ class ContractStorageServiceTest {
         assertInstanceOf(SaasContractDto.class, result);
     }
 
+    @Test
+    @Transactional
+    void updateContractMatchingETag() throws JSONException {
+        String eTag = contractStorageService.findContractETag(saasContract.getId()).orElseThrow();
+        SaasContractDto editedContract = (SaasContractDto) contractStorageService.getContractDetails(saasContract.getId(), "authToken");
+        editedContract.getNegotiation().setConsumerTncAccepted(true);
+
+        VersionedContractDto result = contractStorageService.updateContractTemplate(editedContract, "token",
+                saasContract.getConsumerId(), eTag);
+
+        String storedETag = contractStorageService.findContractETag(saasContract.getId()).orElseThrow();
+        assertNotEquals(eTag, storedETag);
+        assertEquals(storedETag, ContractStorageService.toETag(result.getVersion()));
+    }
+
+    @Test
+    @Transactional
+    void updateContractModifiedConcurrentlyBeforeFlush() {
+        String eTag = contractStorageService.findContractETag(saasContract.getId()).orElseThrow();
+        SaasContractDto editedContract = (SaasContractDto) contractStorageService.getContractDetails(saasContract.getId(), "authToken");
+        editedContract.getNegotiation().setConsumerTncAccepted(true);
+        String consumerId = saasContract.getConsumerId();
+        // another request stores a new version after this one has loaded the contract and checked its entity tag
+        entityManager.createNativeQuery("update contract_template set version = version + 1 where id = :id")
+                .setParameter("id", saasContract.getId())
+                .executeUpdate();
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () ->
+                contractStorageService.updateContractTemplate(editedContract, "token", consumerId, eTag));
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, ex.getStatusCode());
+    }
+
+    @Test
+    @Transactional
+    void transitionContractStaleETag() {
+        String consumerId = saasContract.getConsumerId();
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () ->
+                contractStorageService.transitionContractTemplateState(saasContract.getId(),
+                        ContractState.SIGNED_CONSUMER, consumerId, "User Name", "authToken", "\"-1\""));
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, ex.getStatusCode());
+    }
+
+    @Test
+    @Transactional
+    void updateContractMinimalSkipsDetailLookups() throws JSONException {
+        SaasContractDto editedContract = (SaasContractDto) contractStorageService.getContractDetails(saasContract.getId(), "authToken");
+        editedContract.getNegotiation().setConsumerTncAccepted(true);
+        Long versionBefore = contractTemplateRepository.findVersionById(saasContract.getId()).orElseThrow();
+        clearInvocations(messageQueueService);
+
+        ContractVersionDto result = contractStorageService.updateContractTemplateMinimal(editedContract,
+                saasContract.getConsumerId(), null);
+
+        assertEquals(saasContract.getId(), result.getId());
+        assertEquals(ContractState.IN_DRAFT, result.getState());
+        assertEquals(versionBefore + 1, result.getVersion());
+        verify(messageQueueService, never()).remoteRequestOfferingDetailsAsync(any());
+    }
+
+    @Test
+    @Transactional
+    void updateContractStaleETag() {
+        SaasContractDto editedContract = (SaasContractDto) contractStorageService.getContractDetails(saasContract.getId(), "authToken");
+        editedContract.getNegotiation().setConsumerTncAccepted(true);
+        String consumerId = saasContract.getConsumerId();
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () ->
+                contractStorageService.updateContractTemplate(editedContract, "token", consumerId, "\"-1\""));
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, ex.getStatusCode());
+    }
+
     @Test
     @Transactional
     void updateContractExistingAllowedAsConsumerSaas() throws JSONException {
@@ -800,13 +1143,17 @@ class ContractStorageServiceTest {
                 ContractState.RELEASED, provider, "User Name", "authToken");
         assertEquals(ContractState.RELEASED.name(), editedContract.getDetails().getState());
 
-        verify(pdfServiceClient).getPdfContract(any());
-        verify(storageClient).pushItem(eq(editedContract.getDetails().getId() + "/contractPdf"), eq(editedContract.getDetails().getId() + ".pdf"), any());
+        // the pdf is generated in the background
+        verify(storageClient, never()).pushItem(eq(editedContract.getDetails().getId() + "/contractPdf"), any(), any());
+        assertEquals(ContractPdfStatus.PENDING,
+                contractTemplateRepository.findPdfStatusById(editedContract.getDetails().getId()).orElse(null));
+        assertTrue(contractPdfJobRepository.existsById(editedContract.getDetails().getId()));
     }
 
     @Test
     @org.springframework.transaction.annotation.Transactional(propagation = Propagation.NOT_SUPPORTED) // handle transactions manually
-    void transitionDataDeliveryProviderIncompleteToCompleteFailAtRelease() throws StorageClientException {
+    void transitionDataDeliveryProviderIncompleteToCompletePdfStorageFailureDoesNotFailRelease()
+            throws StorageClientException {
         transactionTemplate = new TransactionTemplate(transactionManager);
 
         doThrow(StorageClientException.class).when(storageClient).pushItem(any(), any(), any(byte[].class));
@@ -878,16 +1225,15 @@ class ContractStorageServiceTest {
             thrownEx = ex;
         }
 
-        assertNotNull(thrownEx);
-        assertEquals(thrownEx.getClass(), ResponseStatusException.class);
-        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, ((ResponseStatusException) thrownEx).getStatusCode());
-        assertEquals("Encountered error while processing the contract.", ((ResponseStatusException) thrownEx).getReason());
+        assertNull(thrownEx);
 
         ContractTemplate contractTemplate = contractTemplateRepository.findById(template.getId()).orElse(null);
         assertNotNull(contractTemplate);
-        // the last successful state transition was to the SIGNED_CONSUMER state
-        // the contract should still be in that state as transitioning to the RELEASED state failed
-        assertEquals(ContractState.SIGNED_CONSUMER, contractTemplate.getState());
+        // the pdf is generated in the background, so the release does not depend on storing it
+        assertEquals(ContractState.RELEASED, contractTemplate.getState());
+        assertEquals(ContractPdfStatus.PENDING, contractTemplate.getPdfStatus());
+        assertTrue(contractPdfJobRepository.existsById(template.getId()));
+        contractPdfJobRepository.deleteById(template.getId());
     }
 
     @Test
@@ -1141,6 +1487,47 @@ class ContractStorageServiceTest {
 
     }
 
+    @Test
+    void getContractPdfDtoRequestsOrganizationsOverMessageBus() throws JsonProcessingException {
+        DataDeliveryContractTemplate template = new DataDeliveryContractTemplate(dataDeliveryContract, true);
+        template.setRuntimeSelection("0 unlimited");
+        template.setExchangeCountSelection("0");
+        template.addAttachment("attachment.pdf");
+        template.setConsumerSignature(new ContractSignature("Consumer User"));
+        template.setProviderSignature(new ContractSignature("Provider User"));
+        contractTemplateRepository.save(template);
+        MerlotParticipantDto participant = createOrganizationsOrchestratorResponse(getParticipantId(40));
+        when(messageQueueService.remoteRequestOrganizationDetailsAsync(any()))
+                .thenReturn(CompletableFuture.completedFuture(participant));
+
+        ContractPdfDto contractPdfDto = contractStorageService.getContractPdfDto(template.getId());
+
+        assertEquals(template.getId().replace("Contract:", ""), contractPdfDto.getContractId());
+        assertEquals("Provider User", contractPdfDto.getProviderSignerUser());
+        assertEquals("Consumer User", contractPdfDto.getConsumerSignerUser());
+        assertTrue(contractPdfDto.getContractAttachmentFilenames().contains("attachment.pdf"));
+        // the pdf is generated in the background without the token of a user
+        verify(messageQueueService).remoteRequestOrganizationDetailsAsync(template.getProviderId());
+        verify(messageQueueService).remoteRequestOrganizationDetailsAsync(template.getConsumerId());
+        verify(organizationOrchestratorClient, never()).getOrganizationDetails(any(), any());
+    }
+
+    @Test
+    void retryFailedContractPdfQueuesGenerationAgain() {
+        SaasContractTemplate template = new SaasContractTemplate(saasContract, true);
+        template.setPdfStatus(ContractPdfStatus.FAILED);
+        contractTemplateRepository.save(template);
+
+        assertTrue(contractStorageService.retryFailedContractPdf(template.getId()));
+
+        assertEquals(ContractPdfStatus.PENDING,
+                contractTemplateRepository.findPdfStatusById(template.getId()).orElse(null));
+        assertTrue(contractPdfJobRepository.existsById(template.getId()));
+        // only a failed pdf is queued again
+        assertFalse(contractStorageService.retryFailedContractPdf(template.getId()));
+        assertFalse(contractStorageService.retryFailedContractPdf(saasContract.getId()));
+    }
+
     @Test
     void regenerateDataDeliveryContractValid() throws IOException {
         Set<String> representedOrgaIds = new HashSet<>();
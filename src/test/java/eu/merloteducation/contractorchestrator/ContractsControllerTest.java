@@ -23,6 +23,12 @@ import eu.merloteducation.authorizationlibrary.config.InterceptorConfig;
 import eu.merloteducation.authorizationlibrary.config.MerlotSecurityConfig;
 import eu.merloteducation.contractorchestrator.auth.ContractAuthorityChecker;
 import eu.merloteducation.contractorchestrator.controller.ContractsController;
+import eu.merloteducation.contractorchestrator.models.dto.ContractParties;
+import eu.merloteducation.contractorchestrator.models.dto.ContractBasicDtoCursorPage;
+import eu.merloteducation.contractorchestrator.models.dto.ContractVersionDto;
+import eu.merloteducation.contractorchestrator.models.dto.VersionedContractDto;
+import eu.merloteducation.contractorchestrator.models.entities.ContractPdfStatus;
+import eu.merloteducation.contractorchestrator.models.entities.ContractState;
 import eu.merloteducation.contractorchestrator.models.entities.ContractTemplate;
 import eu.merloteducation.contractorchestrator.models.entities.saas.SaasContractTemplate;
 import eu.merloteducation.contractorchestrator.repositories.ContractTemplateRepository;
@@ -43,21 +49,37 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest({ContractsController.class, WebSecurityConfig.class, ContractAuthorityChecker.class})
@@ -84,6 +106,9 @@ class ContractsControllerTest {
     @MockBean
     JwtAuthConverter jwtAuthConverter;
 
+    @Autowired
+    private ContractAuthorityChecker contractAuthorityChecker;
+
     private SaasContractTemplate template;
 
 
@@ -111,7 +136,8 @@ class ContractsControllerTest {
         saasContractDto.getDetails().setConsumerId(getParticipantId(20));
         contractTemplates.add(saasContractDto);
 
-        lenient().when(contractTemplateRepository.findById(template.getId())).thenReturn(Optional.of(template));
+        lenient().when(contractTemplateRepository.findPartiesById(template.getId()))
+                .thenReturn(Optional.of(new ContractParties(template.getProviderId(), template.getConsumerId())));
 
         ContractBasicDto contractBasicDto = new ContractBasicDto();
         contractBasicDto.setId(template.getId());
@@ -125,10 +151,18 @@ class ContractsControllerTest {
                 .thenReturn(saasContractDto);
         lenient().when(contractStorageService.getContractDetails(any(), any()))
                 .thenReturn(saasContractDto);
-        lenient().when(contractStorageService.updateContractTemplate(any(), any(), any()))
-                .thenReturn(saasContractDto);
+        lenient().when(contractStorageService.getVersionedContractDetails(any(), any()))
+                .thenReturn(new VersionedContractDto(saasContractDto, 1L));
+        lenient().when(contractStorageService.updateContractTemplate(any(), any(), any(), any()))
+                .thenReturn(new VersionedContractDto(saasContractDto, 1L));
+        lenient().when(contractStorageService.transitionContractTemplateState(any(), any(), any(), any(), any(), any()))
+                .thenReturn(new VersionedContractDto(saasContractDto, 1L));
+        lenient().when(contractStorageService.findContractETag(any()))
+                .thenReturn(Optional.of("\"1\""));
         lenient().when(contractStorageService.getOrganizationContracts(any(), any(), any(), any()))
                 .thenReturn(null);
+        lenient().when(contractStorageService.getOrganizationContracts(any(), anyInt(), any(), any(), any()))
+                .thenReturn(new ContractBasicDtoCursorPage(contractDtos, null));
         lenient().when(contractStorageService.getContractAttachment(any(), any()))
                 .thenReturn(new byte[]{0x01, 0x02, 0x03, 0x04});
         lenient().when(contractStorageService.getContractPdf(any()))
@@ -248,7 +282,43 @@ class ContractsControllerTest {
                                 new OrganizationRoleGrantedAuthority(OrganizationRole.ORG_LEG_REP, getParticipantId(10))
                         )))
                 .andDo(print())
-                .andExpect(status().isOk());
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""));
+
+        // the entity tag is the version the contract was stored with, not looked up again afterwards
+        verify(contractStorageService, never()).findContractETag(any());
+    }
+
+    @Test
+    void putUpdateContractMinimalReturn() throws Exception
+    {
+        SaasContractDto contractDto = new SaasContractDto();
+        contractDto.setDetails(new SaasContractDetailsDto());
+        contractDto.getDetails().setProviderId(getParticipantId(10));
+        contractDto.getDetails().setConsumerId(getParticipantId(20));
+        contractDto.getDetails().setId(template.getId());
+        when(contractStorageService.updateContractTemplateMinimal(any(), any(), any()))
+                .thenReturn(new ContractVersionDto(template.getId(), ContractState.IN_DRAFT, 2L));
+
+        mvc.perform(MockMvcRequestBuilders
+                        .put("/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("Authorization", "")
+                        .header("Active-Role", "OrgLegRep_" + getParticipantId(10))
+                        .header("Prefer", "return=minimal")
+                        .content(objectAsJsonString(contractDto))
+                        .accept(MediaType.APPLICATION_JSON)
+                        .with(csrf())
+                        .with(jwt().authorities(
+                                new OrganizationRoleGrantedAuthority(OrganizationRole.ORG_LEG_REP, getParticipantId(10))
+                        )))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("Preference-Applied", "return=minimal"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"2\""))
+                .andExpect(jsonPath("$.version").value(2));
+
+        verify(contractStorageService, never()).updateContractTemplate(any(), any(), any(), any());
     }
 
     @Test
@@ -329,6 +399,55 @@ class ContractsControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void patchTransitionContractMatchingIfMatch() throws Exception
+    {
+        SaasContractDto contractDto = new SaasContractDto();
+        contractDto.setDetails(new SaasContractDetailsDto());
+        contractDto.getDetails().setId(template.getId());
+        when(contractStorageService.transitionContractTemplateState(eq(template.getId()), eq(ContractState.SIGNED_CONSUMER),
+                any(), any(), any(), eq("\"1\"")))
+                .thenReturn(new VersionedContractDto(contractDto, 2L));
+
+        mvc.perform(MockMvcRequestBuilders
+                        .patch("/contract/status/" + template.getId() + "/SIGNED_CONSUMER")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("Authorization", "")
+                        .header("Active-Role", "OrgLegRep_" + getParticipantId(10))
+                        .header(HttpHeaders.IF_MATCH, "\"1\"")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .with(csrf())
+                        .with(jwt().authorities(
+                                new OrganizationRoleGrantedAuthority(OrganizationRole.ORG_LEG_REP, getParticipantId(10))
+                        )))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"2\""))
+                .andExpect(jsonPath("$.details.id").value(template.getId()));
+    }
+
+    @Test
+    void patchTransitionContractStaleIfMatch() throws Exception
+    {
+        when(contractStorageService.transitionContractTemplateState(eq(template.getId()), eq(ContractState.SIGNED_CONSUMER),
+                any(), any(), any(), eq("\"0\"")))
+                .thenThrow(new ResponseStatusException(HttpStatus.PRECONDITION_FAILED));
+
+        mvc.perform(MockMvcRequestBuilders
+                        .patch("/contract/status/" + template.getId() + "/SIGNED_CONSUMER")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("Authorization", "")
+                        .header("Active-Role", "OrgLegRep_" + getParticipantId(10))
+                        .header(HttpHeaders.IF_MATCH, "\"0\"")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .with(csrf())
+                        .with(jwt().authorities(
+                                new OrganizationRoleGrantedAuthority(OrganizationRole.ORG_LEG_REP, getParticipantId(10))
+                        )))
+                .andDo(print())
+                .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     void getOrganizationContractsUnauthorized() throws Exception
     {
@@ -361,6 +480,22 @@ class ContractsControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void scrollOrganizationContractsAuthorized() throws Exception
+    {
+        mvc.perform(MockMvcRequestBuilders
+                        .get("/organization/" + getParticipantId(10) + "/scroll")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("Authorization", "")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .with(csrf())
+                        .with(jwt().authorities(
+                                new OrganizationRoleGrantedAuthority(OrganizationRole.ORG_LEG_REP, getParticipantId(10))
+                        )))
+                .andDo(print())
+                .andExpect(status().isOk());
+    }
+
     @Test
     void getContractDetailsValidRequestConsumer() throws Exception
     {
@@ -393,6 +528,49 @@ class ContractsControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void getContractDetailsReturnsETag() throws Exception
+    {
+        // a concurrent update between the entity tag check and loading the contract must not lead to a stale tag
+        SaasContractDto contractDto = new SaasContractDto();
+        contractDto.setDetails(new SaasContractDetailsDto());
+        contractDto.getDetails().setId(template.getId());
+        when(contractStorageService.getVersionedContractDetails(eq(template.getId()), any()))
+                .thenReturn(new VersionedContractDto(contractDto, 3L));
+
+        mvc.perform(MockMvcRequestBuilders
+                        .get("/contract/" + template.getId())
+                        .header("Authorization", "")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .with(csrf())
+                        .with(jwt().authorities(
+                                new OrganizationRoleGrantedAuthority(OrganizationRole.ORG_LEG_REP, getParticipantId(20))
+                        )))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+
+        verify(contractStorageService, never()).findContractETag(any());
+    }
+
+    @Test
+    void getContractDetailsNotModified() throws Exception
+    {
+        mvc.perform(MockMvcRequestBuilders
+                        .get("/contract/" + template.getId())
+                        .header("Authorization", "")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"1\"")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .with(csrf())
+                        .with(jwt().authorities(
+                                new OrganizationRoleGrantedAuthority(OrganizationRole.ORG_LEG_REP, getParticipantId(20))
+                        )))
+                .andDo(print())
+                .andExpect(status().isNotModified());
+
+        verify(contractStorageService, never()).getVersionedContractDetails(any(), any());
+    }
+
     @Test
     void getContractAttachmentAsProvider() throws Exception
     {
@@ -587,6 +765,64 @@ class ContractsControllerTest {
             .andExpect(status().isForbidden());
     }
 
+    @Test
+    void getContractPdfPending() throws Exception
+    {
+        when(contractStorageService.getContractPdfStatus(template.getId()))
+            .thenReturn(Optional.of(ContractPdfStatus.PENDING));
+
+        mvc.perform(MockMvcRequestBuilders
+                .get("/contract/" + template.getId() + "/contractPdf")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", "")
+                .accept(MediaType.APPLICATION_JSON)
+                .with(csrf())
+                .with(jwt().authorities(
+                    new OrganizationRoleGrantedAuthority(OrganizationRole.ORG_LEG_REP, getParticipantId(10))
+                )))
+            .andDo(print())
+            .andExpect(status().isAccepted())
+            .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+        verify(contractStorageService, never()).getContractPdf(template.getId());
+    }
+
+    @Test
+    void getContractPdfFailedIsQueuedAgain() throws Exception
+    {
+        when(contractStorageService.getContractPdfStatus(template.getId()))
+            .thenReturn(Optional.of(ContractPdfStatus.FAILED));
+
+        mvc.perform(MockMvcRequestBuilders
+                .get("/contract/" + template.getId() + "/contractPdf")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Authorization", "")
+                .accept(MediaType.APPLICATION_JSON)
+                .with(csrf())
+                .with(jwt().authorities(
+                    new OrganizationRoleGrantedAuthority(OrganizationRole.ORG_LEG_REP, getParticipantId(10))
+                )))
+            .andDo(print())
+            .andExpect(status().isAccepted())
+            .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+        verify(contractStorageService).retryFailedContractPdf(template.getId());
+        verify(contractStorageService, never()).getContractPdf(template.getId());
+    }
+
+    @Test
+    void contractChecksLoadPartiesOncePerRequest() {
+        Authentication authentication = new TestingAuthenticationToken("user", null,
+                List.of(new OrganizationRoleGrantedAuthority(OrganizationRole.ORG_LEG_REP, getParticipantId(10))));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        try {
+            assertTrue(contractAuthorityChecker.canAccessContract(authentication, template.getId()));
+            assertTrue(contractAuthorityChecker.isContractProvider(authentication, template.getId()));
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+
+        verify(contractTemplateRepository, times(1)).findPartiesById(template.getId());
+    }
+
     private String getParticipantId(int num) {
         return "did:web:orga-" + num + ".test.eu";
     }
@@ -21,6 +21,7 @@ import eu.merloteducation.authorizationlibrary.config.InterceptorConfig;
 import eu.merloteducation.authorizationlibrary.config.MerlotSecurityConfig;
 import eu.merloteducation.contractorchestrator.auth.ContractAuthorityChecker;
 import eu.merloteducation.contractorchestrator.controller.DataTransferController;
+import eu.merloteducation.contractorchestrator.models.dto.ContractParties;
 import eu.merloteducation.contractorchestrator.models.entities.datadelivery.DataDeliveryContractTemplate;
 import eu.merloteducation.contractorchestrator.repositories.ContractTemplateRepository;
 import eu.merloteducation.contractorchestrator.security.WebSecurityConfig;
@@ -97,7 +98,8 @@ class DataTransferControllerTest {
         template.setProviderId("did:web:test.eu#orga-10");
         template.setConsumerId("did:web:test.eu#orga-20");
 
-        lenient().when(contractTemplateRepository.findById(any())).thenReturn(Optional.of(template));
+        lenient().when(contractTemplateRepository.findPartiesById(any()))
+                .thenReturn(Optional.of(new ContractParties(template.getProviderId(), template.getConsumerId())));
 
         lenient().when(edcOrchestrationService.initiateConnectorNegotiation(any(), any(), any())).thenReturn(idResponse);
         lenient().when(edcOrchestrationService.initiateConnectorTransfer(any(), any(), any(), any())).thenReturn(idResponse);
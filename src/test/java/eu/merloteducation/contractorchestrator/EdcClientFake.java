@@ -16,6 +16,8 @@
 
 package eu.merloteducation.contractorchestrator;
 
+import eu.merloteducation.contractorchestrator.models.edc.QueryCatalogRequest;
+import eu.merloteducation.contractorchestrator.models.edc.QuerySpec;
 import eu.merloteducation.contractorchestrator.service.EdcClient;
 import eu.merloteducation.modelslib.edc.asset.AssetCreateRequest;
 import eu.merloteducation.modelslib.edc.catalog.CatalogRequest;
@@ -23,6 +25,7 @@ import eu.merloteducation.modelslib.edc.catalog.DcatCatalog;
 import eu.merloteducation.modelslib.edc.catalog.DcatDataset;
 import eu.merloteducation.modelslib.edc.common.IdResponse;
 import eu.merloteducation.modelslib.edc.contractdefinition.ContractDefinitionCreateRequest;
+import eu.merloteducation.modelslib.edc.contractdefinition.Criterion;
 import eu.merloteducation.modelslib.edc.negotiation.ContractNegotiation;
 import eu.merloteducation.modelslib.edc.negotiation.NegotiationInitiateRequest;
 import eu.merloteducation.modelslib.edc.policy.Policy;
@@ -30,8 +33,11 @@ import eu.merloteducation.modelslib.edc.policy.PolicyCreateRequest;
 import eu.merloteducation.modelslib.edc.transfer.DataRequest;
 import eu.merloteducation.modelslib.edc.transfer.IonosS3TransferProcess;
 import eu.merloteducation.modelslib.edc.transfer.TransferRequest;
+import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 public class EdcClientFake implements EdcClient {
 
@@ -39,6 +45,31 @@ public class EdcClientFake implements EdcClient {
 
     public static final long FAKE_TIMESTAMP = 1234L;
 
+    private final List<String> catalogAssetIds;
+
+    private final boolean catalogFilterSupported;
+
+    private final List<QuerySpec> catalogQueries = new ArrayList<>();
+
+    public EdcClientFake() {
+        this(List.of(FAKE_ID), true);
+    }
+
+    /**
+     * Fake client whose catalog offers the given assets, in this order.
+     *
+     * @param catalogAssetIds ids of the assets in the catalog
+     * @param catalogFilterSupported whether the filter expression of catalog queries is applied or ignored
+     */
+    public EdcClientFake(List<String> catalogAssetIds, boolean catalogFilterSupported) {
+        this.catalogAssetIds = catalogAssetIds;
+        this.catalogFilterSupported = catalogFilterSupported;
+    }
+
+    public List<QuerySpec> getCatalogQueries() {
+        return catalogQueries;
+    }
+
     private IdResponse generateFakeIdResponse() {
         IdResponse response = new IdResponse();
         response.setId(FAKE_ID);
@@ -47,33 +78,50 @@ public class EdcClientFake implements EdcClient {
         return response;
     }
     @Override
-    public IdResponse createAsset(AssetCreateRequest assetCreateRequest) {
-        return generateFakeIdResponse();
+    public Mono<IdResponse> createAssetAsync(AssetCreateRequest assetCreateRequest) {
+        return Mono.fromSupplier(this::generateFakeIdResponse);
     }
 
     @Override
-    public IdResponse createPolicy(PolicyCreateRequest policyCreateRequest) {
-        return generateFakeIdResponse();
+    public Mono<IdResponse> createPolicyAsync(PolicyCreateRequest policyCreateRequest) {
+        return Mono.fromSupplier(this::generateFakeIdResponse);
     }
 
     @Override
-    public IdResponse createContractDefinition(ContractDefinitionCreateRequest contractDefinitionCreateRequest) {
-        return generateFakeIdResponse();
+    public Mono<IdResponse> createContractDefinitionAsync(ContractDefinitionCreateRequest contractDefinitionCreateRequest) {
+        return Mono.fromSupplier(this::generateFakeIdResponse);
     }
 
-    @Override
-    public DcatCatalog queryCatalog(CatalogRequest catalogRequest) {
-        DcatDataset dataset = new DcatDataset();
-        dataset.setAssetId(FAKE_ID);
-        dataset.setHasPolicy(List.of(Policy.builder().id("myId").build()));
+    private DcatCatalog queryCatalog(CatalogRequest catalogRequest) {
+        Stream<String> assetIds = catalogAssetIds.stream();
+        if (catalogRequest instanceof QueryCatalogRequest queryCatalogRequest) {
+            QuerySpec querySpec = queryCatalogRequest.getQuerySpec();
+            catalogQueries.add(querySpec);
+            if (catalogFilterSupported) {
+                for (Criterion criterion : querySpec.getFilterExpression()) {
+                    assetIds = assetIds.filter(assetId -> assetId.equals(criterion.getOperandRight()));
+                }
+            }
+            assetIds = assetIds.skip(querySpec.getOffset()).limit(querySpec.getLimit());
+        }
         DcatCatalog catalog = new DcatCatalog();
-        catalog.setDataset(List.of(dataset));
+        catalog.setDataset(assetIds.map(assetId -> {
+            DcatDataset dataset = new DcatDataset();
+            dataset.setAssetId(assetId);
+            dataset.setHasPolicy(List.of(Policy.builder().id("myId").build()));
+            return dataset;
+        }).toList());
         return catalog;
     }
 
     @Override
-    public IdResponse negotiateOffer(NegotiationInitiateRequest negotiationInitiateRequest) {
-        return generateFakeIdResponse();
+    public Mono<DcatCatalog> queryCatalogAsync(CatalogRequest catalogRequest) {
+        return Mono.fromSupplier(() -> queryCatalog(catalogRequest));
+    }
+
+    @Override
+    public Mono<IdResponse> negotiateOfferAsync(NegotiationInitiateRequest negotiationInitiateRequest) {
+        return Mono.fromSupplier(this::generateFakeIdResponse);
     }
 
     @Override
@@ -0,0 +1,118 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.contractorchestrator;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sun.net.httpserver.HttpServer;
+import eu.merloteducation.contractorchestrator.models.edc.QueryCatalogRequest;
+import eu.merloteducation.contractorchestrator.models.edc.QuerySpec;
+import eu.merloteducation.contractorchestrator.service.EdcClient;
+import eu.merloteducation.contractorchestrator.service.EdcClientRegistry;
+import eu.merloteducation.modelslib.api.organization.OrganizationConnectorTransferDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EdcClientRegistryTest {
+
+    private ConnectionProvider connectionProvider;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private EdcClientRegistry edcClientRegistry;
+
+    @BeforeEach
+    void beforeEach() {
+        connectionProvider = ConnectionProvider.create("edc-test");
+        meterRegistry = new SimpleMeterRegistry();
+        edcClientRegistry = new EdcClientRegistry(Caffeine.newBuilder().build(), connectionProvider,
+                meterRegistry);
+    }
+
+    @AfterEach
+    void afterEach() {
+        connectionProvider.dispose();
+    }
+
+    private OrganizationConnectorTransferDto createConnector(String managementBaseUrl, String accessToken) {
+        OrganizationConnectorTransferDto connector = new OrganizationConnectorTransferDto();
+        connector.setConnectorId("edc1");
+        connector.setManagementBaseUrl(managementBaseUrl);
+        connector.setConnectorAccessToken(accessToken);
+        return connector;
+    }
+
+    @Test
+    void getClientReusesClientForSameConnector() {
+        EdcClient client = edcClientRegistry.getClient(createConnector("http://example.com", "1234"));
+
+        assertSame(client, edcClientRegistry.getClient(createConnector("http://example.com", "1234")));
+    }
+
+    @Test
+    void getClientCreatesNewClientForChangedConnector() {
+        EdcClient client = edcClientRegistry.getClient(createConnector("http://example.com", "1234"));
+
+        assertNotSame(client, edcClientRegistry.getClient(createConnector("http://example.com", "5678")));
+        assertNotSame(client, edcClientRegistry.getClient(createConnector("http://example.org", "1234")));
+    }
+
+    @Test
+    void connectorKeyDoesNotExposeAccessToken() {
+        String key = new EdcClientRegistry.ConnectorKey("http://example.com", "secretToken").toString();
+
+        assertTrue(key.contains("http://example.com"));
+        assertFalse(key.contains("secretToken"));
+    }
+
+    @Test
+    void queryCatalogRecordsPayloadSizeOfChunkedResponse() throws IOException {
+        byte[] catalog = "{\"@type\": \"dcat:Catalog\"}".getBytes(StandardCharsets.UTF_8);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v2/catalog/request", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            // a response length of 0 sends the response chunked without a content length
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(catalog);
+            }
+        });
+        server.start();
+        try {
+            EdcClient client = edcClientRegistry.getClient(
+                    createConnector("http://localhost:" + server.getAddress().getPort(), "1234"));
+
+            client.queryCatalogAsync(new QueryCatalogRequest("http://example.com",
+                    new QuerySpec(0, 50, Collections.emptyList()))).block();
+        } finally {
+            server.stop(0);
+        }
+
+        assertEquals(1, meterRegistry.summary("edc.catalog.payload.size").count());
+        assertEquals(catalog.length, meterRegistry.summary("edc.catalog.payload.size").totalAmount());
+    }
+}
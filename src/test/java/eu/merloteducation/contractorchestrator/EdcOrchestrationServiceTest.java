@@ -18,6 +18,7 @@ package eu.merloteducation.contractorchestrator;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.merloteducation.contractorchestrator.models.edc.QuerySpec;
 import eu.merloteducation.contractorchestrator.service.*;
 import eu.merloteducation.modelslib.api.contract.datadelivery.DataDeliveryContractDetailsDto;
 import eu.merloteducation.modelslib.api.contract.datadelivery.DataDeliveryContractDto;
@@ -31,31 +32,40 @@ import eu.merloteducation.modelslib.api.organization.IonosS3BucketDto;
 import eu.merloteducation.modelslib.api.organization.IonosS3ExtensionConfigDto;
 import eu.merloteducation.modelslib.api.organization.OrganizationConnectorTransferDto;
 import eu.merloteducation.modelslib.api.serviceoffering.ServiceOfferingDto;
+import eu.merloteducation.modelslib.edc.asset.AssetCreateRequest;
 import eu.merloteducation.modelslib.edc.common.IdResponse;
+import eu.merloteducation.modelslib.edc.contractdefinition.ContractDefinitionCreateRequest;
 import eu.merloteducation.modelslib.edc.negotiation.ContractNegotiation;
+import eu.merloteducation.modelslib.edc.policy.PolicyCreateRequest;
 import eu.merloteducation.modelslib.edc.transfer.IonosS3TransferProcess;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static eu.merloteducation.contractorchestrator.SelfDescriptionDemoData.*;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
-@SpringBootTest
+@SpringBootTest(properties = {"edc-client.step-timeout=1s", "edc-client.catalog.page-size=2",
+        "edc-client.catalog.scan-limit=6"})
 @ExtendWith(MockitoExtension.class)
 @EnableConfigurationProperties
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
@@ -67,7 +77,7 @@ class EdcOrchestrationServiceTest {
     private MessageQueueService messageQueueService;
 
     @Mock
-    private ObjectProvider<EdcClient> edcClientProvider;
+    private EdcClientRegistry edcClientRegistry;
 
     @Autowired
     private EdcOrchestrationService edcOrchestrationService;
@@ -85,9 +95,7 @@ class EdcOrchestrationServiceTest {
     public void setUp() throws JsonProcessingException {
         ReflectionTestUtils.setField(edcOrchestrationService, "messageQueueService", messageQueueService);
         ReflectionTestUtils.setField(edcOrchestrationService, "contractStorageService", contractStorageService);
-        ReflectionTestUtils.setField(edcOrchestrationService, "edcClientProvider", edcClientProvider);
-
-        when(edcClientProvider.getObject(any())).thenReturn(new EdcClientFake());
+        ReflectionTestUtils.setField(edcOrchestrationService, "edcClientRegistry", edcClientRegistry);
 
         ObjectMapper mapper = new ObjectMapper();
 
@@ -203,10 +211,110 @@ class EdcOrchestrationServiceTest {
         edc2.setConnectorAccessToken("1234");
         edc2.setIonosS3ExtensionConfig(new IonosS3ExtensionConfigDto(bucketList));
 
-        doReturn(edc1).when(messageQueueService)
-                .remoteRequestOrganizationConnectorByConnectorId(getParticipantId(20), "edc1");
-        doReturn(edc2).when(messageQueueService)
-                .remoteRequestOrganizationConnectorByConnectorId(getParticipantId(10), "edc2");
+        doReturn(CompletableFuture.completedFuture(edc1)).when(messageQueueService)
+                .remoteRequestOrganizationConnectorByConnectorIdAsync(getParticipantId(20), "edc1");
+        doReturn(CompletableFuture.completedFuture(edc2)).when(messageQueueService)
+                .remoteRequestOrganizationConnectorByConnectorIdAsync(getParticipantId(10), "edc2");
+    }
+
+    @BeforeEach
+    public void beforeEach() {
+        lenient().when(edcClientRegistry.getClient(any())).thenReturn(new EdcClientFake());
+    }
+
+    private EdcClientFake useCatalog(int assetsBefore, boolean filterSupported) {
+        List<String> assetIds = Stream.concat(IntStream.range(0, assetsBefore).mapToObj(i -> "otherAsset" + i),
+                Stream.of(EdcClientFake.FAKE_ID)).toList();
+        EdcClientFake edcClientFake = new EdcClientFake(assetIds, filterSupported);
+        when(edcClientRegistry.getClient(any())).thenReturn(edcClientFake);
+        return edcClientFake;
+    }
+
+    private IdResponse initiatePushNegotiation() {
+        return this.edcOrchestrationService.initiateConnectorNegotiation(validPushContract.getDetails().getId(),
+                validPushContract.getDetails().getProviderId(), "authToken");
+    }
+
+    @Test
+    void testInitiateNegotiationFindsAssetWithCatalogFilter() {
+        EdcClientFake edcClientFake = useCatalog(5, true);
+
+        IdResponse negotiationId = initiatePushNegotiation();
+
+        assertEquals(EdcClientFake.FAKE_ID, negotiationId.getId());
+        assertEquals(1, edcClientFake.getCatalogQueries().size());
+        assertFalse(edcClientFake.getCatalogQueries().get(0).getFilterExpression().isEmpty());
+    }
+
+    @Test
+    void testInitiateNegotiationScansCatalogIfFilterIsNotSupported() {
+        EdcClientFake edcClientFake = useCatalog(5, false);
+
+        IdResponse negotiationId = initiatePushNegotiation();
+
+        assertEquals(EdcClientFake.FAKE_ID, negotiationId.getId());
+        // the scan continues after the unfiltered first page instead of requesting it again
+        assertEquals(List.of(0, 2, 4), edcClientFake.getCatalogQueries().stream().map(QuerySpec::getOffset).toList());
+        assertTrue(edcClientFake.getCatalogQueries().stream().skip(1)
+                .allMatch(query -> query.getFilterExpression().isEmpty()));
+    }
+
+    @Test
+    void testInitiateNegotiationAssetMissingInFilteredCatalog() {
+        EdcClientFake edcClientFake = new EdcClientFake(List.of("otherAsset"), true);
+        when(edcClientRegistry.getClient(any())).thenReturn(edcClientFake);
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, this::initiatePushNegotiation);
+
+        assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
+        assertEquals(1, edcClientFake.getCatalogQueries().size());
+    }
+
+    @Test
+    void testInitiateNegotiationStopsCatalogScanAtScanLimit() {
+        EdcClientFake edcClientFake = useCatalog(10, false);
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, this::initiatePushNegotiation);
+
+        assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
+        assertEquals(List.of(0, 2, 4), edcClientFake.getCatalogQueries().stream().map(QuerySpec::getOffset).toList());
+    }
+
+    @Test
+    void testInitiateNegotiationCreatesAssetAndPolicyConcurrently() {
+        Sinks.Empty<Void> policyCreationStarted = Sinks.empty();
+        when(edcClientRegistry.getClient(any())).thenReturn(new EdcClientFake() {
+            @Override
+            public Mono<IdResponse> createAssetAsync(AssetCreateRequest assetCreateRequest) {
+                // only completes if the policy is created while the asset creation is still pending
+                return policyCreationStarted.asMono().then(super.createAssetAsync(assetCreateRequest));
+            }
+
+            @Override
+            public Mono<IdResponse> createPolicyAsync(PolicyCreateRequest policyCreateRequest) {
+                policyCreationStarted.tryEmitEmpty();
+                return super.createPolicyAsync(policyCreateRequest);
+            }
+        });
+
+        IdResponse negotiationId = initiatePushNegotiation();
+
+        assertEquals(EdcClientFake.FAKE_ID, negotiationId.getId());
+    }
+
+    @Test
+    void testInitiateNegotiationStepTimeout() {
+        when(edcClientRegistry.getClient(any())).thenReturn(new EdcClientFake() {
+            @Override
+            public Mono<IdResponse> createContractDefinitionAsync(
+                    ContractDefinitionCreateRequest contractDefinitionCreateRequest) {
+                return Mono.never();
+            }
+        });
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, this::initiatePushNegotiation);
+
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, ex.getStatusCode());
     }
 
     @Test
@@ -0,0 +1,127 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.contractorchestrator;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import eu.merloteducation.contractorchestrator.migration.LegacyRevocationQueueMigration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Properties;
+
+import static eu.merloteducation.contractorchestrator.config.MessageQueueConfig.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class LegacyRevocationQueueMigrationTest {
+
+    private AmqpAdmin amqpAdmin;
+
+    private RabbitTemplate rabbitTemplate;
+
+    private Channel channel;
+
+    private LegacyRevocationQueueMigration migration;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        amqpAdmin = mock(AmqpAdmin.class);
+        rabbitTemplate = mock(RabbitTemplate.class);
+        channel = mock(Channel.class);
+        when(amqpAdmin.getQueueProperties(LEGACY_ORGANIZATION_REVOKED_QUEUE)).thenReturn(new Properties());
+        when(rabbitTemplate.execute(any(ChannelCallback.class))).thenAnswer(invocation ->
+                invocation.<ChannelCallback<?>>getArgument(0).doInRabbit(channel));
+        migration = new LegacyRevocationQueueMigration(amqpAdmin, rabbitTemplate, Duration.ofMillis(100));
+    }
+
+    private static GetResponse legacyMessage(long deliveryTag, String orgaId) {
+        return new GetResponse(new Envelope(deliveryTag, false, ORCHESTRATOR_EXCHANGE, ORGANIZATION_REVOKED_KEY),
+                new AMQP.BasicProperties.Builder().contentType("application/json").build(),
+                orgaId.getBytes(StandardCharsets.UTF_8), 0);
+    }
+
+    private void confirmWith(boolean ack) {
+        doAnswer(invocation -> {
+            CorrelationData correlationData = invocation.getArgument(3);
+            correlationData.getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "nack"));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    @Test
+    void confirmedMessagesAreAckedAndLegacyQueueIsDeleted() throws Exception {
+        when(channel.basicGet(LEGACY_ORGANIZATION_REVOKED_QUEUE, false))
+                .thenReturn(legacyMessage(1, "\"orga-1\""), legacyMessage(2, "\"orga-2\""), null);
+        confirmWith(true);
+
+        migration.run(null);
+
+        ArgumentCaptor<Message> moved = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate, times(2)).send(eq(""), eq(ORGANIZATION_REVOKED_QUEUE), moved.capture(),
+                any(CorrelationData.class));
+        assertEquals("\"orga-1\"", new String(moved.getAllValues().get(0).getBody(), StandardCharsets.UTF_8));
+        assertEquals("application/json", moved.getAllValues().get(0).getMessageProperties().getContentType());
+        verify(channel).basicAck(1, false);
+        verify(channel).basicAck(2, false);
+        verify(amqpAdmin).deleteQueue(LEGACY_ORGANIZATION_REVOKED_QUEUE);
+    }
+
+    @Test
+    void rejectedMessageIsNotAckedAndLegacyQueueIsKept() throws Exception {
+        when(channel.basicGet(LEGACY_ORGANIZATION_REVOKED_QUEUE, false))
+                .thenReturn(legacyMessage(1, "\"orga-1\""), null);
+        confirmWith(false);
+
+        migration.run(null);
+
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        verify(amqpAdmin, never()).deleteQueue(anyString());
+    }
+
+    @Test
+    void unconfirmedMessageIsNotAckedAndLegacyQueueIsKept() throws Exception {
+        when(channel.basicGet(LEGACY_ORGANIZATION_REVOKED_QUEUE, false))
+                .thenReturn(legacyMessage(1, "\"orga-1\""), null);
+
+        migration.run(null);
+
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        verify(amqpAdmin, never()).deleteQueue(anyString());
+    }
+
+    @Test
+    void missingLegacyQueueIsSkipped() {
+        when(amqpAdmin.getQueueProperties(LEGACY_ORGANIZATION_REVOKED_QUEUE)).thenReturn(null);
+
+        migration.run(null);
+
+        verifyNoInteractions(rabbitTemplate);
+        verify(amqpAdmin, never()).deleteQueue(anyString());
+    }
+}
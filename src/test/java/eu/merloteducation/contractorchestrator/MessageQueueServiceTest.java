@@ -17,40 +17,51 @@
 package eu.merloteducation.contractorchestrator;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import eu.merloteducation.contractorchestrator.config.MessageQueueConfig;
 import eu.merloteducation.contractorchestrator.models.entities.*;
+import eu.merloteducation.contractorchestrator.models.entities.cooperation.CooperationContractTemplate;
 import eu.merloteducation.contractorchestrator.models.entities.datadelivery.DataDeliveryContractTemplate;
 import eu.merloteducation.contractorchestrator.models.entities.datadelivery.DataDeliveryProvisioning;
 import eu.merloteducation.contractorchestrator.models.entities.datadelivery.ionoss3extension.IonosS3ConsumerTransferProvisioning;
 import eu.merloteducation.contractorchestrator.models.entities.datadelivery.ionoss3extension.IonosS3ProviderTransferProvisioning;
 import eu.merloteducation.contractorchestrator.models.entities.saas.SaasContractTemplate;
 import eu.merloteducation.contractorchestrator.repositories.ContractTemplateRepository;
+import eu.merloteducation.contractorchestrator.repositories.OutboxMessageRepository;
 import eu.merloteducation.contractorchestrator.service.MessageQueueService;
 import eu.merloteducation.gxfscataloglibrary.models.selfdescriptions.merlot.participants.MerlotLegalParticipantCredentialSubject;
 import eu.merloteducation.modelslib.api.organization.MerlotParticipantDto;
-import org.junit.jupiter.api.BeforeAll;
+import eu.merloteducation.modelslib.api.organization.OrganizationConnectorTransferDto;
+import eu.merloteducation.modelslib.api.serviceoffering.ServiceOfferingDto;
+import eu.merloteducation.modelslib.queue.ContractTemplateUpdated;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.rabbit.AsyncRabbitTemplate;
+import org.springframework.amqp.rabbit.RabbitConverterFuture;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 
 import static eu.merloteducation.contractorchestrator.SelfDescriptionDemoData.*;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
-import static org.mockito.Mockito.doReturn;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
-@SpringBootTest
+@SpringBootTest(properties = {"messagequeue.reply-timeout.organization-connector=200ms",
+        "messagequeue.revocation.chunk-size=2"})
 @ExtendWith(MockitoExtension.class)
 @EnableConfigurationProperties
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
@@ -62,20 +73,37 @@ class MessageQueueServiceTest {
     @Autowired
     ContractTemplateRepository contractTemplateRepository;
 
+    @Autowired
+    OutboxMessageRepository outboxMessageRepository;
+
+    @Autowired
+    Cache<String, MerlotParticipantDto> organizationDetailsCache;
+
+    @Autowired
+    AsyncCache<String, ServiceOfferingDto> offeringDetailsCache;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
     @MockBean
     RabbitTemplate rabbitTemplate;
 
+    @MockBean
+    AsyncRabbitTemplate asyncRabbitTemplate;
+
     private MerlotParticipantDto orga10;
 
-    @BeforeAll
-    void beforeAll() {
-        ReflectionTestUtils.setField(messageQueueService, "rabbitTemplate", rabbitTemplate);
+    private static <T> RabbitConverterFuture<T> completedReply(T reply) {
+        RabbitConverterFuture<T> future = new RabbitConverterFuture<>("correlationId", null,
+                (correlationId, channelHolder) -> {}, f -> null);
+        future.complete(reply);
+        return future;
     }
 
     @BeforeEach
     void beforeEach() throws JsonProcessingException {
-        when(rabbitTemplate.convertSendAndReceiveAsType(anyString(), anyString(), any(Object.class),any()))
-                .thenReturn(null);
+        when(asyncRabbitTemplate.convertSendAndReceiveAsType(anyString(), anyString(), any(Object.class), any()))
+                .thenAnswer(invocation -> completedReply(null));
         orga10 = new MerlotParticipantDto();
         String orga10Id = "did:web:test.eu:orga-10";
         orga10.setId(orga10Id);
@@ -87,8 +115,8 @@ class MessageQueueServiceTest {
                 ),
                 "did:web:someorga"
         ));
-        doReturn(orga10).when(rabbitTemplate)
-                .convertSendAndReceiveAsType(anyString(), anyString(), eq("10"),any());
+        doAnswer(invocation -> completedReply(orga10)).when(asyncRabbitTemplate)
+                .convertSendAndReceiveAsType(anyString(), anyString(), eq("10"), any());
     }
 
     @Test
@@ -156,4 +184,144 @@ class MessageQueueServiceTest {
         assertNotNull(templateDataAfterOrganizationRevoked);
         assertEquals(ContractState.REVOKED, templateDataAfterOrganizationRevoked.getState());
     }
+
+    @Test
+    void remoteRequestOrganizationConnectorWithoutReplyCompletesAfterRouteTimeout() {
+        RabbitConverterFuture<Object> pendingReply = new RabbitConverterFuture<>("correlationId", null,
+                (correlationId, channelHolder) -> {}, f -> null);
+        doReturn(pendingReply).when(asyncRabbitTemplate).convertSendAndReceiveAsType(
+                eq(MessageQueueConfig.ORCHESTRATOR_EXCHANGE), eq(MessageQueueConfig.ORGANIZATIONCONNECTOR_REQUEST_KEY),
+                any(Object.class), any());
+
+        // the connector route times out after 200ms instead of the default 5s
+        OrganizationConnectorTransferDto connector = assertTimeout(Duration.ofSeconds(2),
+                () -> messageQueueService.remoteRequestOrganizationConnectorByConnectorId("orgaId", "edc1"));
+
+        assertNull(connector);
+    }
+
+    @Transactional
+    @Test
+    void organizationRevokedTransitionsContractsInChunks() {
+        String orgaId = "chunkedOrgaId";
+        List<String> draftIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            SaasContractTemplate template = new SaasContractTemplate();
+            template.setConsumerId(orgaId);
+            draftIds.add(contractTemplateRepository.save(template).getId());
+        }
+        double deletedBefore = meterRegistry.counter("contracts.organization.revocation",
+                "state", ContractState.DELETED.name()).count();
+
+        // the revocation chunk size is set to 2 for this test class
+        messageQueueService.organizationRevokedListener(orgaId);
+
+        for (String id : draftIds) {
+            ContractTemplate template = contractTemplateRepository.findById(id).orElse(null);
+            assertNotNull(template);
+            assertEquals(ContractState.DELETED, template.getState());
+        }
+        assertEquals(deletedBefore + 5, meterRegistry.counter("contracts.organization.revocation",
+                "state", ContractState.DELETED.name()).count());
+    }
+
+    @Transactional
+    @Test
+    void organizationRevokedRedeliveryIsHarmless() {
+        String orgaId = "redeliveredOrgaId";
+        SaasContractTemplate revoked = new SaasContractTemplate();
+        revoked.setProviderId(orgaId);
+        revoked = contractTemplateRepository.save(revoked);
+
+        messageQueueService.organizationRevokedListener(orgaId);
+        assertEquals(ContractState.DELETED,
+                contractTemplateRepository.findById(revoked.getId()).orElseThrow().getState());
+        double deletedAfterFirstDelivery = meterRegistry.counter("contracts.organization.revocation",
+                "state", ContractState.DELETED.name()).count();
+
+        // a redelivered revocation only transitions contracts that are still in the source state
+        SaasContractTemplate draftedLater = new SaasContractTemplate();
+        draftedLater.setProviderId(orgaId);
+        draftedLater = contractTemplateRepository.save(draftedLater);
+
+        messageQueueService.organizationRevokedListener(orgaId);
+        assertEquals(ContractState.DELETED,
+                contractTemplateRepository.findById(revoked.getId()).orElseThrow().getState());
+        assertEquals(ContractState.DELETED,
+                contractTemplateRepository.findById(draftedLater.getId()).orElseThrow().getState());
+        assertEquals(deletedAfterFirstDelivery + 1, meterRegistry.counter("contracts.organization.revocation",
+                "state", ContractState.DELETED.name()).count());
+    }
+
+    @Transactional
+    @Test
+    void organizationRevokedKeepsContractsTheEntityRefusesToRevoke() {
+        String orgaId = "unrevocableOrgaId";
+        SaasContractTemplate templateSaas = new SaasContractTemplate();
+        templateSaas.setConsumerId(orgaId);
+        templateSaas.setUserCountSelection("anything");
+        CooperationContractTemplate templateCoop = new CooperationContractTemplate();
+        templateCoop.setProviderId(orgaId);
+        List<ContractTemplate> templates = List.of(templateSaas, templateCoop);
+        for (ContractTemplate template : templates) {
+            template.setRuntimeSelection("anything");
+            template.setConsumerSignature(new ContractSignature("signer"));
+            template.setConsumerTncAccepted(true);
+            template.setAttachments(new HashSet<>());
+            template.transitionState(ContractState.SIGNED_CONSUMER);
+            contractTemplateRepository.save(template);
+            assertThrows(IllegalStateException.class, () -> template.transitionState(ContractState.REVOKED));
+        }
+
+        messageQueueService.organizationRevokedListener(orgaId);
+
+        for (ContractTemplate template : templates) {
+            assertEquals(ContractState.SIGNED_CONSUMER,
+                    contractTemplateRepository.findById(template.getId()).orElseThrow().getState());
+        }
+    }
+
+    @Test
+    void organizationRevokedEvictsCachedOrganizationDetails() {
+        String orgaId = "revokedOrgaId";
+        organizationDetailsCache.put(orgaId, new MerlotParticipantDto());
+
+        messageQueueService.organizationRevokedListener(orgaId);
+
+        assertNull(organizationDetailsCache.getIfPresent(orgaId));
+    }
+
+    @Test
+    void remoteGetOfferingDetailsCachedUntilContractCreated() {
+        String offeringId = "urn:uuid:cached-offering";
+        ServiceOfferingDto offering = new ServiceOfferingDto();
+        doAnswer(invocation -> completedReply(offering)).when(asyncRabbitTemplate)
+                .convertSendAndReceiveAsType(anyString(), anyString(), eq(offeringId), any());
+
+        assertSame(offering, messageQueueService.remoteRequestOfferingDetails(offeringId));
+        assertSame(offering, messageQueueService.remoteRequestOfferingDetails(offeringId));
+        verify(asyncRabbitTemplate, times(1))
+                .convertSendAndReceiveAsType(anyString(), anyString(), eq(offeringId), any());
+
+        messageQueueService.sendContractCreatedMessage(new ContractTemplateUpdated("contractId", offeringId));
+        assertNull(offeringDetailsCache.synchronous().getIfPresent(offeringId));
+
+        messageQueueService.remoteRequestOfferingDetails(offeringId);
+        verify(asyncRabbitTemplate, times(2))
+                .convertSendAndReceiveAsType(anyString(), anyString(), eq(offeringId), any());
+    }
+
+    @Test
+    void contractCreatedMessageStoredInOutbox() {
+        outboxMessageRepository.deleteAll();
+
+        messageQueueService.sendContractCreatedMessage(new ContractTemplateUpdated("contractId", "offeringId"));
+
+        List<OutboxMessage> outbox = outboxMessageRepository.findAll();
+        assertEquals(1, outbox.size());
+        assertEquals(MessageQueueConfig.CONTRACT_CREATED_KEY, outbox.get(0).getRoutingKey());
+        assertEquals("contractId", outbox.get(0).getContractId());
+        assertEquals("offeringId", outbox.get(0).getServiceOfferingId());
+        verifyNoInteractions(rabbitTemplate);
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import eu.merloteducation.contractorchestrator.messaging.CborMessageConverter;
+import eu.merloteducation.contractorchestrator.messaging.NegotiatingMessageConverter;
+import eu.merloteducation.gxfscataloglibrary.models.selfdescriptions.gx.serviceofferings.GxServiceOfferingCredentialSubject;
+import eu.merloteducation.modelslib.api.serviceoffering.OfferingMetaDto;
+import eu.merloteducation.modelslib.api.serviceoffering.ProviderDetailsDto;
+import eu.merloteducation.modelslib.api.serviceoffering.ServiceOfferingDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.core.ParameterizedTypeReference;
+
+import java.util.List;
+
+import static eu.merloteducation.contractorchestrator.SelfDescriptionDemoData.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class NegotiatingMessageConverterTest {
+
+    private static final ParameterizedTypeReference<ServiceOfferingDto> OFFERING_TYPE =
+            new ParameterizedTypeReference<>() {
+            };
+
+    private ServiceOfferingDto offering;
+
+    @BeforeEach
+    void beforeEach() throws JsonProcessingException {
+        String id = "urn:uuid:codec-offering";
+        String providedBy = "did:web:test.eu:participant:orga-10";
+        OfferingMetaDto metaDto = new OfferingMetaDto();
+        metaDto.setState("RELEASED");
+        metaDto.setHash("1234");
+        metaDto.setCreationDate("2023-08-21T15:32:19.100661+02:00");
+        metaDto.setModifiedDate("2023-08-21T13:32:19.487564Z");
+        ProviderDetailsDto providerDto = new ProviderDetailsDto();
+        providerDto.setProviderId(providedBy);
+        providerDto.setProviderLegalName("MyProvider");
+
+        offering = new ServiceOfferingDto();
+        offering.setMetadata(metaDto);
+        offering.setProviderDetails(providerDto);
+        offering.setSelfDescription(createVpFromCsList(
+                List.of(
+                        getGxServiceOfferingCs(id, "MyOffering", providedBy),
+                        getMerlotServiceOfferingCs(id),
+                        getMerlotDataDeliveryServiceOfferingCs(id, "Push")
+                ),
+                "did:web:someorga"
+        ));
+    }
+
+    private void assertOfferingEquals(ServiceOfferingDto expected, Object actual) {
+        ServiceOfferingDto actualOffering = assertInstanceOf(ServiceOfferingDto.class, actual);
+        assertEquals(expected.getMetadata().getHash(), actualOffering.getMetadata().getHash());
+        assertEquals(expected.getProviderDetails().getProviderId(),
+                actualOffering.getProviderDetails().getProviderId());
+        GxServiceOfferingCredentialSubject expectedCs = expected.getSelfDescription()
+                .findFirstCredentialSubjectByType(GxServiceOfferingCredentialSubject.class);
+        GxServiceOfferingCredentialSubject actualCs = actualOffering.getSelfDescription()
+                .findFirstCredentialSubjectByType(GxServiceOfferingCredentialSubject.class);
+        assertEquals(expectedCs.getId(), actualCs.getId());
+        assertEquals(expectedCs.getName(), actualCs.getName());
+    }
+
+    @Test
+    void compressedCborOfferingRoundTrip() {
+        NegotiatingMessageConverter converter =
+                new NegotiatingMessageConverter(CborMessageConverter.CONTENT_TYPE, 1);
+
+        Message message = converter.toMessage(offering, new MessageProperties(), ServiceOfferingDto.class);
+        assertEquals(CborMessageConverter.CONTENT_TYPE, message.getMessageProperties().getContentType());
+        assertTrue(message.getMessageProperties().getContentEncoding().startsWith("gzip"));
+
+        Message json = new Jackson2JsonMessageConverter().toMessage(offering, new MessageProperties());
+        assertTrue(message.getBody().length < json.getBody().length);
+
+        assertOfferingEquals(offering, converter.fromMessage(message, OFFERING_TYPE));
+    }
+
+    @Test
+    void jsonPeerMessageDecoded() {
+        NegotiatingMessageConverter converter =
+                new NegotiatingMessageConverter(CborMessageConverter.CONTENT_TYPE, 1);
+
+        Message json = new Jackson2JsonMessageConverter().toMessage(offering, new MessageProperties());
+
+        assertOfferingEquals(offering, converter.fromMessage(json, OFFERING_TYPE));
+    }
+
+    @Test
+    void jsonByDefaultAndCborAccepted() {
+        NegotiatingMessageConverter converter =
+                new NegotiatingMessageConverter(MessageProperties.CONTENT_TYPE_JSON, 0);
+
+        Message message = converter.toMessage("orgaId", new MessageProperties());
+
+        assertEquals(MessageProperties.CONTENT_TYPE_JSON, message.getMessageProperties().getContentType());
+        assertFalse(message.getMessageProperties().getContentEncoding().startsWith("gzip"));
+        String accept = message.getMessageProperties().getHeader(NegotiatingMessageConverter.ACCEPT_HEADER);
+        assertTrue(accept.contains(CborMessageConverter.CONTENT_TYPE));
+        assertEquals("orgaId", new Jackson2JsonMessageConverter().fromMessage(message));
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator;
+
+import eu.merloteducation.contractorchestrator.models.entities.OutboxMessage;
+import eu.merloteducation.contractorchestrator.repositories.OutboxMessageRepository;
+import eu.merloteducation.contractorchestrator.service.OutboxRelay;
+import eu.merloteducation.modelslib.queue.ContractTemplateUpdated;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static eu.merloteducation.contractorchestrator.config.MessageQueueConfig.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(properties = {"outbox.relay.confirm-timeout=200ms", "outbox.relay.nack-backoff=100ms"})
+class OutboxRelayTest {
+
+    @Autowired
+    OutboxRelay outboxRelay;
+
+    @Autowired
+    OutboxMessageRepository outboxMessageRepository;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    RabbitTemplate rabbitTemplate;
+
+    @BeforeEach
+    void beforeEach() {
+        outboxMessageRepository.deleteAll();
+    }
+
+    private void confirmWith(boolean ack) {
+        doAnswer(invocation -> {
+            CorrelationData correlationData = invocation.getArgument(3);
+            correlationData.getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "nack"));
+            return null;
+        }).when(rabbitTemplate).convertAndSend(anyString(), anyString(), any(Object.class), any(CorrelationData.class));
+    }
+
+    private OutboxMessage storeMessage(String routingKey, String contractId) {
+        return outboxMessageRepository.save(new OutboxMessage(routingKey,
+                new ContractTemplateUpdated(contractId, "offering-" + contractId)));
+    }
+
+    @Test
+    void relayPublishesMessagesOfContractInOrder() {
+        confirmWith(true);
+        storeMessage(CONTRACT_CREATED_KEY, "contract-1");
+        storeMessage(CONTRACT_PURGED_KEY, "contract-1");
+        storeMessage(CONTRACT_CREATED_KEY, "contract-2");
+
+        // the purge of contract-1 is held back until its creation has been confirmed
+        outboxRelay.relay();
+        assertEquals(1, outboxMessageRepository.count());
+
+        outboxRelay.relay();
+        assertEquals(0, outboxMessageRepository.count());
+
+        ArgumentCaptor<String> routingKeys = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+        verify(rabbitTemplate, times(3)).convertAndSend(eq(ORCHESTRATOR_EXCHANGE), routingKeys.capture(),
+                payloads.capture(), any(CorrelationData.class));
+        assertEquals(List.of(CONTRACT_CREATED_KEY, CONTRACT_CREATED_KEY, CONTRACT_PURGED_KEY),
+                routingKeys.getAllValues());
+        assertEquals(List.of("contract-1", "contract-2", "contract-1"), payloads.getAllValues().stream()
+                .map(payload -> ((ContractTemplateUpdated) payload).getContractId()).toList());
+    }
+
+    @Test
+    void relayPublishesMessagesOfContractInCreationOrderRegardlessOfIds() {
+        confirmWith(true);
+        // ids are allocated in blocks per instance, so a later message may get a lower id than an earlier one
+        OutboxMessage purged = storeMessage(CONTRACT_PURGED_KEY, "contract-1");
+        OutboxMessage created = storeMessage(CONTRACT_CREATED_KEY, "contract-1");
+        jdbcTemplate.update("update outbox_message set created_at = ? where id = ?",
+                created.getCreatedAt().minusSeconds(1), created.getId());
+        assertTrue(purged.getId() < created.getId());
+
+        outboxRelay.relay();
+        outboxRelay.relay();
+
+        ArgumentCaptor<String> routingKeys = ArgumentCaptor.forClass(String.class);
+        verify(rabbitTemplate, times(2)).convertAndSend(eq(ORCHESTRATOR_EXCHANGE), routingKeys.capture(),
+                any(Object.class), any(CorrelationData.class));
+        assertEquals(List.of(CONTRACT_CREATED_KEY, CONTRACT_PURGED_KEY), routingKeys.getAllValues());
+        assertEquals(0, outboxMessageRepository.count());
+    }
+
+    @Test
+    void relayRepublishesOnlyNackedMessages() {
+        AtomicInteger published = new AtomicInteger();
+        doAnswer(invocation -> {
+            CorrelationData correlationData = invocation.getArgument(3);
+            boolean ack = published.getAndIncrement() > 0;
+            correlationData.getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "nack"));
+            return null;
+        }).when(rabbitTemplate).convertAndSend(anyString(), anyString(), any(Object.class), any(CorrelationData.class));
+        storeMessage(CONTRACT_CREATED_KEY, "contract-1");
+        storeMessage(CONTRACT_CREATED_KEY, "contract-2");
+
+        outboxRelay.relay();
+        assertEquals(0, outboxMessageRepository.count());
+
+        ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+        verify(rabbitTemplate, times(3)).convertAndSend(eq(ORCHESTRATOR_EXCHANGE), anyString(),
+                payloads.capture(), any(CorrelationData.class));
+        assertEquals(List.of("contract-1", "contract-2", "contract-1"), payloads.getAllValues().stream()
+                .map(payload -> ((ContractTemplateUpdated) payload).getContractId()).toList());
+    }
+
+    @Test
+    void relayCommitsConfirmedMessagesBeforeRepublishing() {
+        AtomicInteger published = new AtomicInteger();
+        List<Long> pendingOnRepublish = new ArrayList<>();
+        doAnswer(invocation -> {
+            CorrelationData correlationData = invocation.getArgument(3);
+            int attempt = published.getAndIncrement();
+            if (attempt == 2) {
+                pendingOnRepublish.add(outboxMessageRepository.count());
+            }
+            boolean ack = attempt > 0;
+            correlationData.getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "nack"));
+            return null;
+        }).when(rabbitTemplate).convertAndSend(anyString(), anyString(), any(Object.class), any(CorrelationData.class));
+        storeMessage(CONTRACT_CREATED_KEY, "contract-1");
+        storeMessage(CONTRACT_CREATED_KEY, "contract-2");
+
+        outboxRelay.relay();
+
+        // the nacked message is published again in a new transaction, after the confirmed one has been removed
+        assertEquals(List.of(1L), pendingOnRepublish);
+        assertEquals(0, outboxMessageRepository.count());
+    }
+
+    @Test
+    void relayBacksOffBetweenNackedAttempts() {
+        confirmWith(false);
+        storeMessage(CONTRACT_CREATED_KEY, "contract-1");
+
+        long start = System.nanoTime();
+        outboxRelay.relay();
+
+        // three attempts with a backoff of 100ms and 200ms in between
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofMillis(300)) >= 0);
+        verify(rabbitTemplate, times(3)).convertAndSend(anyString(), anyString(), any(Object.class),
+                any(CorrelationData.class));
+        assertEquals(1, outboxMessageRepository.count());
+    }
+
+    @Test
+    void relayStopsAfterUnconfirmedBatch() {
+        double unconfirmed = meterRegistry.get("outbox.relayed").tag("outcome", "unconfirmed").counter().count();
+        storeMessage(CONTRACT_CREATED_KEY, "contract-1");
+
+        // the broker never confirms the message, so it is left for the next run instead of being published again
+        outboxRelay.relay();
+
+        verify(rabbitTemplate, times(1)).convertAndSend(anyString(), anyString(), any(Object.class),
+                any(CorrelationData.class));
+        assertEquals(1, outboxMessageRepository.count());
+        assertEquals(unconfirmed + 1,
+                meterRegistry.get("outbox.relayed").tag("outcome", "unconfirmed").counter().count());
+    }
+
+    @Test
+    void relayKeepsMessageUntilConfirmed() {
+        double nacked = meterRegistry.get("outbox.relayed").tag("outcome", "nacked").counter().count();
+        long confirms = meterRegistry.get("outbox.confirm.latency").timer().count();
+
+        confirmWith(false);
+        storeMessage(CONTRACT_CREATED_KEY, "contract-1");
+        outboxRelay.relay();
+        assertEquals(1, outboxMessageRepository.count());
+        assertEquals(nacked + 3, meterRegistry.get("outbox.relayed").tag("outcome", "nacked").counter().count());
+
+        confirmWith(true);
+        outboxRelay.relay();
+        assertEquals(0, outboxMessageRepository.count());
+        assertEquals(confirms + 4, meterRegistry.get("outbox.confirm.latency").timer().count());
+
+        outboxRelay.relay();
+        assertEquals(0, meterRegistry.get("outbox.lag").timeGauge().value());
+    }
+}
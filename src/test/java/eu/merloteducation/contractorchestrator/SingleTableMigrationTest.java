@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package eu.merloteducation.contractorchestrator;
+
+import eu.merloteducation.contractorchestrator.migration.SingleTableMigration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.OffsetDateTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleTableMigrationTest {
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void beforeEach() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("legacy-joined-schema.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+    }
+
+    @AfterEach
+    void afterEach() {
+        database.shutdown();
+    }
+
+    private int countTables(String table) {
+        return jdbcTemplate.queryForObject("select count(*) from information_schema.tables " +
+                "where lower(table_name) = ?", Integer.class, table);
+    }
+
+    @Test
+    void migrateJoinedTables() {
+        new SingleTableMigration(database).afterPropertiesSet();
+
+        Map<String, Object> dataContract = jdbcTemplate.queryForMap("select * from contract_template " +
+                "where id = 'Contract:data'");
+        assertEquals("unlimited", dataContract.get("EXCHANGE_COUNT_SELECTION"));
+        assertEquals("consumer signer", dataContract.get("CONSUMER_SIGNER_NAME"));
+        assertNotNull(dataContract.get("CONSUMER_SIGNATURE_DATE"));
+        assertNull(dataContract.get("PROVIDER_SIGNER_NAME"));
+        assertEquals("10", jdbcTemplate.queryForObject("select user_count_selection from contract_template " +
+                "where id = 'Contract:saas'", String.class));
+
+        Map<String, Object> provisioning = jdbcTemplate.queryForMap("select * from service_contract_provisioning " +
+                "where id = 20");
+        assertEquals("DataDeliveryProvisioning", provisioning.get("DISCRIMINATOR"));
+        assertEquals(10L, ((Number) provisioning.get("CONSUMER_TRANSFER_PROVISIONING_ID")).longValue());
+        assertEquals(11L, ((Number) provisioning.get("PROVIDER_TRANSFER_PROVISIONING_ID")).longValue());
+        assertEquals("DefaultProvisioning", jdbcTemplate.queryForObject("select discriminator " +
+                "from service_contract_provisioning where id = 21", String.class));
+
+        Map<String, Object> consumerTransfer = jdbcTemplate.queryForMap("select * from transfer_provisioning " +
+                "where id = 10");
+        assertEquals("IonosS3ConsumerTransferProvisioning", consumerTransfer.get("DISCRIMINATOR"));
+        assertEquals("targetBucket", consumerTransfer.get("DATA_ADDRESS_TARGET_BUCKET_NAME"));
+        assertEquals("source.txt", jdbcTemplate.queryForObject("select data_address_source_file_name " +
+                "from transfer_provisioning where id = 11", String.class));
+
+        for (String table : new String[]{"contract_signature", "saas_contract_template",
+                "data_delivery_contract_template", "cooperation_contract_template", "data_delivery_provisioning",
+                "default_provisioning", "ionos_s3_consumer_transfer_provisioning",
+                "ionos_s3_provider_transfer_provisioning"}) {
+            assertEquals(0, countTables(table), table);
+        }
+    }
+
+    @Test
+    void migrateTwiceIsNoOp() {
+        new SingleTableMigration(database).afterPropertiesSet();
+        OffsetDateTime signatureDate = jdbcTemplate.queryForObject("select consumer_signature_date " +
+                "from contract_template where id = 'Contract:data'", OffsetDateTime.class);
+
+        assertDoesNotThrow(() -> new SingleTableMigration(database).afterPropertiesSet());
+        assertEquals(signatureDate, jdbcTemplate.queryForObject("select consumer_signature_date " +
+                "from contract_template where id = 'Contract:data'", OffsetDateTime.class));
+    }
+}
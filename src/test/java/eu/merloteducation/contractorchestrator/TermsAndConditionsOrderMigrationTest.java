@@ -0,0 +1,109 @@
+/*
+ *  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package eu.merloteducation.contractorchestrator;
+
+import eu.merloteducation.contractorchestrator.migration.TermsAndConditionsOrderMigration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TermsAndConditionsOrderMigrationTest {
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void beforeEach() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("legacy-terms-and-conditions.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+    }
+
+    @AfterEach
+    void afterEach() {
+        database.shutdown();
+    }
+
+    private List<String> orderedContents(String contractId) {
+        return jdbcTemplate.queryForList("select content from contract_template_terms_and_conditions " +
+                "where contract_template_id = ? order by tnc_order", String.class, contractId);
+    }
+
+    private List<Map<String, Object>> allRows() {
+        return jdbcTemplate.queryForList("select * from contract_template_terms_and_conditions " +
+                "order by contract_template_id, tnc_order");
+    }
+
+    @Test
+    void migrateAssignsStoredOrder() {
+        new TermsAndConditionsOrderMigration(database).afterPropertiesSet();
+
+        assertEquals(List.of("http://example.com/platform", "http://example.com/provider",
+                "http://example.com/additional"), orderedContents("Contract:saas"));
+        assertEquals(List.of("http://example.com/platform", "http://example.com/provider"),
+                orderedContents("Contract:data"));
+        assertEquals(List.of(0, 1, 2), jdbcTemplate.queryForList("select tnc_order " +
+                "from contract_template_terms_and_conditions where contract_template_id = 'Contract:saas' " +
+                "order by tnc_order", Integer.class));
+        assertEquals("hash3", jdbcTemplate.queryForObject("select hash from contract_template_terms_and_conditions " +
+                "where contract_template_id = 'Contract:data' and tnc_order = 1", String.class));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from contract_template_terms_and_conditions " +
+                "where tnc_order is null", Integer.class));
+    }
+
+    @Test
+    void migrateKeepsInsertionOrderOverContentAndHashOrder() {
+        new TermsAndConditionsOrderMigration(database).afterPropertiesSet();
+
+        assertEquals(List.of("http://example.com/zeta", "http://example.com/alpha", "http://example.com/mu"),
+                orderedContents("Contract:coop"));
+        assertEquals(List.of("hash9", "hash5", "hash7"), jdbcTemplate.queryForList("select hash " +
+                "from contract_template_terms_and_conditions where contract_template_id = 'Contract:coop' " +
+                "order by tnc_order", String.class));
+    }
+
+    @Test
+    void migrateTwiceIsNoOp() {
+        new TermsAndConditionsOrderMigration(database).afterPropertiesSet();
+        List<Map<String, Object>> migratedRows = allRows();
+
+        assertDoesNotThrow(() -> new TermsAndConditionsOrderMigration(database).afterPropertiesSet());
+        assertEquals(migratedRows, allRows());
+    }
+
+    @Test
+    void migrateWithoutTableIsNoOp() {
+        jdbcTemplate.execute("drop table contract_template_terms_and_conditions");
+
+        assertDoesNotThrow(() -> new TermsAndConditionsOrderMigration(database).afterPropertiesSet());
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from information_schema.tables " +
+                "where lower(table_name) = 'contract_template_terms_and_conditions'", Integer.class));
+    }
+}
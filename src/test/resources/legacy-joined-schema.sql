@@ -0,0 +1,51 @@
+--  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+--
+--  Licensed under the Apache License, Version 2.0 (the "License");
+--  you may not use this file except in compliance with the License.
+--  You may obtain a copy of the License at
+--
+--      http://www.apache.org/licenses/LICENSE-2.0
+--
+--  Unless required by applicable law or agreed to in writing, software
+--  distributed under the License is distributed on an "AS IS" BASIS,
+--  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--  See the License for the specific language governing permissions and
+--  limitations under the License.
+
+-- contract schema as generated for the joined inheritance mapping, with one data delivery and one saas contract
+
+create table contract_signature (id bigint primary key, signer_name varchar(255),
+    signature_date timestamp(6) with time zone);
+create table transfer_provisioning (id bigint primary key, selected_connector_id varchar(255));
+create table ionos_s3_consumer_transfer_provisioning (id bigint primary key references transfer_provisioning,
+    data_address_target_bucket_name varchar(255), data_address_target_path varchar(255));
+create table ionos_s3_provider_transfer_provisioning (id bigint primary key references transfer_provisioning,
+    data_address_source_bucket_name varchar(255), data_address_source_file_name varchar(255));
+create table service_contract_provisioning (id bigint primary key, valid_until timestamp(6) with time zone);
+create table data_delivery_provisioning (id bigint primary key references service_contract_provisioning,
+    consumer_transfer_provisioning_id bigint unique references transfer_provisioning,
+    provider_transfer_provisioning_id bigint unique references transfer_provisioning);
+create table default_provisioning (id bigint primary key references service_contract_provisioning);
+create table contract_template (id varchar(255) primary key, discriminator varchar(31), state varchar(255),
+    provisioning_id bigint unique references service_contract_provisioning,
+    consumer_signature_id bigint unique references contract_signature,
+    provider_signature_id bigint unique references contract_signature);
+create table saas_contract_template (id varchar(255) primary key references contract_template,
+    user_count_selection varchar(255));
+create table data_delivery_contract_template (id varchar(255) primary key references contract_template,
+    exchange_count_selection varchar(255));
+create table cooperation_contract_template (id varchar(255) primary key references contract_template);
+
+insert into contract_signature values (1, 'consumer signer', timestamp with time zone '2024-01-01 10:00:00+00');
+insert into transfer_provisioning values (10, 'consumerConnector');
+insert into transfer_provisioning values (11, 'providerConnector');
+insert into ionos_s3_consumer_transfer_provisioning values (10, 'targetBucket', 'target/');
+insert into ionos_s3_provider_transfer_provisioning values (11, 'sourceBucket', 'source.txt');
+insert into service_contract_provisioning values (20, null);
+insert into service_contract_provisioning values (21, null);
+insert into data_delivery_provisioning values (20, 10, 11);
+insert into default_provisioning values (21);
+insert into contract_template values ('Contract:data', 'DataDeliveryContractTemplate', 'SIGNED_CONSUMER', 20, 1, null);
+insert into contract_template values ('Contract:saas', 'SaasContractTemplate', 'IN_DRAFT', 21, null, null);
+insert into data_delivery_contract_template values ('Contract:data', 'unlimited');
+insert into saas_contract_template values ('Contract:saas', '10');
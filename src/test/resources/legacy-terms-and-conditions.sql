@@ -0,0 +1,31 @@
+--  Copyright 2024 Dataport. All rights reserved. Developed as part of the MERLOT project.
+--
+--  Licensed under the Apache License, Version 2.0 (the "License");
+--  you may not use this file except in compliance with the License.
+--  You may obtain a copy of the License at
+--
+--      http://www.apache.org/licenses/LICENSE-2.0
+--
+--  Unless required by applicable law or agreed to in writing, software
+--  distributed under the License is distributed on an "AS IS" BASIS,
+--  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--  See the License for the specific language governing permissions and
+--  limitations under the License.
+
+-- terms and conditions as stored before the collection was ordered, three contracts with several entries each
+
+create table contract_template (id varchar(255) primary key, state varchar(255));
+create table contract_template_terms_and_conditions (contract_template_id varchar(255) not null
+    references contract_template, content varchar(255), hash varchar(255));
+
+insert into contract_template values ('Contract:saas', 'IN_DRAFT');
+insert into contract_template values ('Contract:data', 'SIGNED_CONSUMER');
+insert into contract_template values ('Contract:coop', 'IN_DRAFT');
+insert into contract_template_terms_and_conditions values ('Contract:saas', 'http://example.com/platform', 'hash1');
+insert into contract_template_terms_and_conditions values ('Contract:data', 'http://example.com/platform', 'hash1');
+insert into contract_template_terms_and_conditions values ('Contract:saas', 'http://example.com/provider', 'hash2');
+insert into contract_template_terms_and_conditions values ('Contract:data', 'http://example.com/provider', 'hash3');
+insert into contract_template_terms_and_conditions values ('Contract:saas', 'http://example.com/additional', 'hash4');
+insert into contract_template_terms_and_conditions values ('Contract:coop', 'http://example.com/zeta', 'hash9');
+insert into contract_template_terms_and_conditions values ('Contract:coop', 'http://example.com/alpha', 'hash5');
+insert into contract_template_terms_and_conditions values ('Contract:coop', 'http://example.com/mu', 'hash7');